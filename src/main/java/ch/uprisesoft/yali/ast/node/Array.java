@@ -0,0 +1,210 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.ast.node;
+
+import ch.uprisesoft.yali.ast.node.word.FloatWord;
+import ch.uprisesoft.yali.ast.node.word.IntegerWord;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An array of fixed size with constant time access to its elements. Unlike
+ * lists, arrays are changed in place and are only equal to themselves.
+ *
+ * As long as all elements are integers fitting in a long, or all elements
+ * are floats, they are stored unboxed in a long[] or a double[]. Numbers in
+ * literal lists are symbols, an array made from them stores the numbers they
+ * read as. Storing
+ * anything else switches to a Node[] for good. A new array holds integer
+ * zeros, storing a float in it keeps them integers in a Node[].
+ *
+ * getChildren() is a view of the array, changing the view changes the
+ * array.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class Array extends Node {
+
+    private final int size;
+
+    // Exactly one of them is used
+    private long[] longs;
+    private double[] doubles;
+    private Node[] nodes;
+
+    /**
+     * Creates an array of zeros.
+     *
+     * @param size the number of elements
+     */
+    public Array(int size) {
+        super(NodeType.ARRAY, null);
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative array size: " + size);
+        }
+        this.size = size;
+        this.longs = new long[size];
+    }
+
+    /**
+     * Creates an array with the given elements, stored unboxed if possible.
+     *
+     * @param elements the elements of the array
+     */
+    public Array(java.util.List<Node> elements) {
+        super(NodeType.ARRAY, null);
+        this.size = elements.size();
+
+        Node[] literals = new Node[size];
+        for (int i = 0; i < size; i++) {
+            literals[i] = Node.literal(elements.get(i));
+        }
+
+        if (all(literals, NodeType.INTEGER)) {
+            longs = new long[size];
+            for (int i = 0; i < size; i++) {
+                longs[i] = literals[i].toIntegerWord().getLong();
+            }
+        } else if (all(literals, NodeType.FLOAT)) {
+            doubles = new double[size];
+            for (int i = 0; i < size; i++) {
+                doubles[i] = literals[i].toFloatWord().getFloat();
+            }
+        } else {
+            nodes = elements.toArray(new Node[size]);
+        }
+    }
+
+    private static boolean all(Node[] elements, NodeType type) {
+        for (Node n : elements) {
+            if (!n.type().equals(type) || (type.equals(NodeType.INTEGER) && n.toIntegerWord().isBig())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the elements are stored unboxed
+     */
+    public boolean isUnboxed() {
+        return nodes == null;
+    }
+
+    /**
+     * @param index zero based index
+     * @return the element at the given index
+     */
+    public Node get(int index) {
+        check(index);
+        if (longs != null) {
+            return IntegerWord.of(longs[index]);
+        } else if (doubles != null) {
+            return new FloatWord(doubles[index]);
+        }
+        return nodes[index];
+    }
+
+    /**
+     * Replaces an element.
+     *
+     * @param index zero based index
+     * @param node the new element
+     * @return the previous element
+     */
+    public Node set(int index, Node node) {
+        Node previous = get(index);
+
+        if (longs != null) {
+            if (node.type().equals(NodeType.INTEGER) && !node.toIntegerWord().isBig()) {
+                longs[index] = node.toIntegerWord().getLong();
+                return previous;
+            }
+            toNodes();
+        }
+
+        if (doubles != null) {
+            if (node.type().equals(NodeType.FLOAT)) {
+                doubles[index] = node.toFloatWord().getFloat();
+                return previous;
+            }
+            toNodes();
+        }
+
+        nodes[index] = node;
+        return previous;
+    }
+
+    @Override
+    public java.util.List<Node> getChildren() {
+        if (children == null) {
+            children = new Elements();
+        }
+        return children;
+    }
+
+    private void check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private void toNodes() {
+        Node[] boxed = new Node[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = get(i);
+        }
+        nodes = boxed;
+        longs = null;
+        doubles = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(" ");
+            }
+            sb.append(get(i));
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private final class Elements extends AbstractList<Node> implements RandomAccess {
+
+        @Override
+        public Node get(int index) {
+            return Array.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Node set(int index, Node node) {
+            return Array.this.set(index, node);
+        }
+    }
+}
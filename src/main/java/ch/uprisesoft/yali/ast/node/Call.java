@@ -15,98 +15,79 @@
  */
 package ch.uprisesoft.yali.ast.node;
 
-import java.util.ArrayList;
+import ch.uprisesoft.yali.scope.Environment;
+import ch.uprisesoft.yali.scope.Symbol;
 import java.util.Iterator;
-import java.util.List;
 import java.util.stream.Collectors;
 
 /**
+ * A procedure call as written in the source: the name of the procedure and the
+ * argument expressions as children. A call holds no evaluation state, the
+ * interpreter keeps that in a Frame. Parsed calls can therefore be run
+ * repeatedly, recursively and by several interpreters at the same time.
+ *
+ * A call caches the procedure definition it was last resolved to, see
+ * Environment.procedure(Call).
  *
  * @author uprisesoft@gmail.com
  */
 public class Call extends Node implements Iterator<Node> {
 
     private final String name;
-    private final java.util.List<Node> args;
-    private Procedure definition;
-    private Node result;
-    private int callPos = 0;
-    private boolean evaluated = false;
+    private final Symbol symbol;
+
+    // Written as a whole, so interpreters sharing the call never see a torn
+    // entry
+    private volatile Resolution resolution;
 
     public Call(String name) {
         super(NodeType.PROCCALL);
         this.name = name;
-        this.args = new ArrayList<>();
-//        this.result = null;
-    }
-
-    public Procedure definition() {
-        return definition;
-    }
-
-    public void definition(Procedure definition) {
-        this.definition = definition;
-    }
-
-    public void arg(Node arg) {
-        this.args.add(arg);
-    }
-
-    public List<Node> args() {
-        return args;
-    }
-
-    public void args(List<Node> args) {
-        this.args.clear();
-        this.args.addAll(args);
-    }
-
-    public Node nextParameter() {
-        return children.get(args.size());
-    }
-
-    public boolean hasMoreCalls() {
-        return callPos <= definition.getChildren().size() - 1;
+        this.symbol = Symbol.of(name);
     }
 
-    public Call nextCall() {
-        return definition.getChildren().get(callPos++).toProcedureCall();
+    public String getName() {
+        return name;
     }
 
-    public void reset() {
-        callPos = 0;
-        args.clear();
-        evaluated = false;
-//        result = null;
+    /**
+     * @return the interned name of the called procedure
+     */
+    public Symbol symbol() {
+        return symbol;
     }
 
     /**
-     * Checks if all arguments are evaluated
+     * The cached definition of the called procedure.
      *
-     * @return true if all arguments are evaluated, false otherwise
+     * @param env the environment resolving the call
+     * @param epoch the current definitions epoch
+     * @return the cached definition, or null if the call was not resolved in
+     * this environment at this epoch
      */
-    public boolean hasMoreParameters() {
-        return args.size() < children.size();
+    public Procedure cached(Environment env, long epoch) {
+        Resolution r = resolution;
+        if (r != null && r.env == env && r.epoch == epoch) {
+            return r.definition;
+        }
+        return null;
     }
 
-    public void evaluated(boolean e) {
-        this.evaluated = e;
+    public void cache(Environment env, long epoch, Procedure definition) {
+        resolution = new Resolution(env, epoch, definition);
     }
 
-    public boolean evaluated() {
-        return evaluated;
-    }
+    private static final class Resolution {
 
-    public Node result() {
-        return result;
-    }
+        private final Environment env;
+        private final long epoch;
+        private final Procedure definition;
 
-    public void result(Node result) {
-        this.result = result;
-    }
-
-    public String getName() {
-        return name;
+        Resolution(Environment env, long epoch, Procedure definition) {
+            this.env = env;
+            this.epoch = epoch;
+            this.definition = definition;
+        }
     }
 
     @Override
@@ -145,11 +126,8 @@ public class Call extends Node implements Iterator<Node> {
 
         final Call other = (Call) obj;
 
-        if (this.hashCode() == other.hashCode()) {
-            return true;
-        }
-
-        return true;
+        // Not cached, the arguments of a call may be replaced in place
+        return name.equals(other.name) && children.equals(other.children);
     }
 
     @Override
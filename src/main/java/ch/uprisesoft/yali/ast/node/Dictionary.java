@@ -0,0 +1,214 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.ast.node;
+
+import ch.uprisesoft.yali.ast.node.word.Word;
+import ch.uprisesoft.yali.exception.NodeTypeException;
+import java.util.ArrayList;
+
+/**
+ * A mutable map from words to nodes. Like arrays, dictionaries are changed
+ * in place and are only equal to themselves.
+ *
+ * Keys are compared as words are, with equals() and hashCode(). So the
+ * symbol 1, the quoted word "1, the integer 1 and the float 1.0 are the same
+ * key, but the boolean true and the quoted word "true are not. Only words
+ * can be keys.
+ *
+ * The entries are kept in an open addressing hash table with linear
+ * probing, removing an entry shifts the following entries of its run back.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class Dictionary extends Node {
+
+    private static final int MIN_CAPACITY = 8;
+
+    // Parallel arrays, a slot is free if its key is null. The capacity is a
+    // power of two and at most half of the slots are used.
+    private Node[] keys = new Node[MIN_CAPACITY];
+    private Node[] values = new Node[MIN_CAPACITY];
+    private int size = 0;
+
+    public Dictionary() {
+        super(NodeType.DICTIONARY, null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key a word
+     * @return the value stored under the key, or null if there is none
+     */
+    public Node get(Node key) {
+        int slot = find(key(key));
+        return slot < 0 ? null : values[slot];
+    }
+
+    public boolean containsKey(Node key) {
+        return find(key(key)) >= 0;
+    }
+
+    /**
+     * Stores a value under a key, replacing the previous value.
+     *
+     * @param key a word
+     * @param value the new value
+     * @return the previous value, or null if there was none
+     */
+    public Node put(Node key, Node value) {
+        int slot = find(key(key));
+        if (slot >= 0) {
+            Node previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        slot = free(key);
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return null;
+    }
+
+    /**
+     * @param key a word
+     * @return the removed value, or null if there was none
+     */
+    public Node remove(Node key) {
+        int slot = find(key(key));
+        if (slot < 0) {
+            return null;
+        }
+
+        Node previous = values[slot];
+        int mask = keys.length - 1;
+
+        // Move entries of the run back into the gap if the gap is between
+        // their home slot and their slot
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = null;
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+
+    /**
+     * @return the keys as they were first stored, in no particular order
+     */
+    public java.util.List<Node> keys() {
+        java.util.List<Node> result = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                result.add(keys[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks that a key is a word.
+     */
+    private static Node key(Node key) {
+        if (!(key instanceof Word) || key.type().equals(NodeType.NONE)) {
+            throw new NodeTypeException(key, key.type(), NodeType.QUOTE, NodeType.SYMBOL, NodeType.NUMBER);
+        }
+        return key;
+    }
+
+    private static int hash(Node key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private int find(Node key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int free(Node key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != null) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize(int capacity) {
+        Node[] oldKeys = keys;
+        Node[] oldValues = values;
+
+        keys = new Node[capacity];
+        values = new Node[capacity];
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = free(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public java.util.List<Node> getChildren() {
+        java.util.List<Node> children = new ArrayList<>(size * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                children.add(keys[i]);
+                children.add(values[i]);
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                if (sb.length() > 1) {
+                    sb.append(" ");
+                }
+                sb.append(keys[i]).append(" ").append(values[i]);
+            }
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+}
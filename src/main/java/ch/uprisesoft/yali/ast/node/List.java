@@ -15,24 +15,64 @@
  */
 package ch.uprisesoft.yali.ast.node;
 
-import java.util.Collections;
+import ch.uprisesoft.yali.scope.Environment;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.RandomAccess;
 import java.util.stream.Collectors;
 
 /**
+ * A list of nodes. Lists share their elements: fput(), lput(), butfirst() and
+ * butlast() return a new list backed by the same array as this one, so they
+ * take constant time and neither list is copied.
+ *
+ * The elements of a list are a range of a shared array. A new element can be
+ * put in front of or after the range in place, as long as no other list
+ * claimed that slot before. Otherwise the range is copied to a larger array,
+ * with room in the direction the list grows. Changing an element of an array
+ * shared with other lists copies it first.
+ *
+ * getChildren() is a view of the list, changing the view changes the list.
+ *
+ * Lists are equal if their elements are equal. The hash of a list is cached
+ * until the list or a list nested in it is changed, so comparing nested lists
+ * again and again does not walk them every time, and lists with different
+ * hashes are known to differ without comparing their elements.
  *
  * @author uprisesoft@gmail.com
  */
 public class List extends Node {
-    
+
+    private static final Node[] NO_ITEMS = new Node[0];
+    private static final List[] NO_LISTS = new List[0];
+    private static final Hash[] NO_HASHES = new Hash[0];
+
     private String source = "";
+    private Parsed parsed;
+
+    // The elements are store.items[from] to store.items[to - 1]
+    private Store store;
+    private int from;
+    private int to;
+
+    // Counts the changes to this list, a cached hash is valid for one count
+    private volatile long version = 0;
+    private volatile Hash hash;
 
     public List() {
-        super(NodeType.LIST);
+        this(new Store(NO_ITEMS, 0, 0), 0, 0);
     }
     
     public List(java.util.List<Node> nodes) {
-        super(NodeType.LIST);
-        super.addChildren(nodes);
+        this(new Store(nodes.toArray(NO_ITEMS), 0, nodes.size()), 0, nodes.size());
+    }
+
+    private List(Store store, int from, int to) {
+        super(NodeType.LIST, null);
+        this.store = store;
+        this.from = from;
+        this.to = to;
     }
 
     public String source() {
@@ -43,8 +83,180 @@ public class List extends Node {
         this.source = source;
     }
 
+    /**
+     * Returns the program this list was parsed to, if it was parsed in the
+     * given environment and no procedure was (re)defined since.
+     *
+     * @param env the environment the program is going to run in
+     * @param epoch the current definitions epoch of the environment
+     * @return the cached program or null if there is none or it is stale
+     */
+    public Node parsed(Environment env, long epoch) {
+        Parsed p = parsed;
+        if (p != null && p.env == env && p.epoch == epoch) {
+            return p.program;
+        }
+        return null;
+    }
+
+    public void parsed(Node program, Environment env, long epoch) {
+        this.parsed = new Parsed(program, env, epoch);
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    /**
+     * @param index zero based
+     */
+    public Node item(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return store.items[from + index];
+    }
+
+    public Node first() {
+        return item(0);
+    }
+
+    public Node last() {
+        return item(size() - 1);
+    }
+
+    /**
+     * @return a new list with the node in front of the elements of this one
+     */
+    public List fput(Node node) {
+        Store s = store;
+        synchronized (s) {
+            if (from == s.low && from > 0) {
+                s.items[--s.low] = node;
+                s.shared = true;
+                return new List(s, from - 1, to);
+            }
+        }
+
+        int size = size();
+        int front = Math.max(size, 4) + 1;
+        Node[] items = new Node[front + size];
+        System.arraycopy(store.items, from, items, front, size);
+        items[front - 1] = node;
+        return new List(new Store(items, front - 1, items.length), front - 1, items.length);
+    }
+
+    /**
+     * @return a new list with the node after the elements of this one
+     */
+    public List lput(Node node) {
+        Store s = store;
+        synchronized (s) {
+            if (to == s.high && to < s.items.length) {
+                s.items[s.high++] = node;
+                s.shared = true;
+                return new List(s, from, to + 1);
+            }
+        }
+
+        int size = size();
+        Node[] items = Arrays.copyOfRange(store.items, from, from + Math.max(size * 2, 4) + 1);
+        items[size] = node;
+        return new List(new Store(items, 0, size + 1), 0, size + 1);
+    }
+
+    /**
+     * @return a new list with all elements of this one but the first
+     */
+    public List butfirst() {
+        if (isEmpty()) {
+            throw new IndexOutOfBoundsException("Empty list");
+        }
+        store.shared = true;
+        return new List(store, from + 1, to);
+    }
+
+    /**
+     * @return a new list with all elements of this one but the last
+     */
+    public List butlast() {
+        if (isEmpty()) {
+            throw new IndexOutOfBoundsException("Empty list");
+        }
+        store.shared = true;
+        return new List(store, from, to - 1);
+    }
+
+    /**
+     * Adds a node at the end of this list
+     */
+    @Override
+    public void addChild(Node node) {
+        Store s = store;
+        synchronized (s) {
+            if (to == s.high && to < s.items.length) {
+                s.items[s.high++] = node;
+                to++;
+                version++;
+                return;
+            }
+        }
+        own(Math.max(size() * 2, 4));
+        store.items[store.high++] = node;
+        to++;
+        version++;
+    }
+
+    @Override
+    public void addChildren(java.util.List<Node> nodes) {
+        for (Node node : nodes) {
+            addChild(node);
+        }
+    }
+
+    @Override
+    public java.util.List<Node> getChildren() {
+        if (children == null) {
+            children = new Children();
+        }
+        return children;
+    }
+
     public void reverse() {
-        Collections.reverse(children);
+        own(0);
+        Node[] items = store.items;
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            Node tmp = items[i];
+            items[i] = items[j];
+            items[j] = tmp;
+        }
+        version++;
+    }
+
+    /**
+     * Copies the elements to an array of its own, with room for more elements
+     * at the end
+     */
+    private void own(int room) {
+        int size = size();
+        Node[] items = Arrays.copyOfRange(store.items, from, from + size + room);
+        store = new Store(items, 0, size);
+        from = 0;
+        to = size;
+    }
+
+    private Node set(int index, Node node) {
+        Node previous = item(index);
+        if (store.shared) {
+            own(0);
+        }
+        store.items[from + index] = node;
+        version++;
+        return previous;
     }
 
     @Override
@@ -52,7 +264,7 @@ public class List extends Node {
         StringBuilder sb = new StringBuilder();
         sb.append("[");
         sb.append(
-                children
+                getChildren()
                         .stream()
                         .map(e -> e.toString())
                         .collect(Collectors.joining(" ")
@@ -63,11 +275,43 @@ public class List extends Node {
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        for (Node n : children) {
-            hash = 31 * hash + (n == null ? 0 : n.hashCode());
+        return hash().hash;
+    }
+
+    /**
+     * The cached hash if it is still valid, otherwise a new one. Checking it
+     * only visits the nested lists, not the other elements.
+     */
+    private Hash hash() {
+        Hash h = hash;
+        if (h != null && h.valid(version)) {
+            return h;
         }
-        return hash;
+
+        long v = version;
+        int code = 7;
+        java.util.List<List> nested = null;
+        java.util.List<Hash> nestedHashes = null;
+        for (int i = from; i < to; i++) {
+            Node n = store.items[i];
+            if (n instanceof List) {
+                Hash nh = ((List) n).hash();
+                if (nested == null) {
+                    nested = new ArrayList<>();
+                    nestedHashes = new ArrayList<>();
+                }
+                nested.add((List) n);
+                nestedHashes.add(nh);
+                code = 31 * code + nh.hash;
+            } else {
+                code = 31 * code + (n == null ? 0 : n.hashCode());
+            }
+        }
+        h = nested == null
+                ? new Hash(code, v, NO_LISTS, NO_HASHES)
+                : new Hash(code, v, nested.toArray(NO_LISTS), nestedHashes.toArray(NO_HASHES));
+        hash = h;
+        return h;
     }
 
     @Override
@@ -82,14 +326,143 @@ public class List extends Node {
         
         final List other = (List) obj;
         
-        if(this.children.size() != other.children.size()) {
+        if(this.size() != other.size()) {
+            return false;
+        }
+
+        // Hashing caches the hashes of nested lists as well, so comparing
+        // the elements below does not walk them again
+        if (this.hashCode() != other.hashCode()) {
             return false;
         }
 
-        if (this.hashCode() == other.hashCode()) {
+        for (int i = 0; i < size(); i++) {
+            Node a = item(i);
+            Node b = other.item(i);
+            if (a != b && (a == null || !a.equals(b))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An array shared by lists. The slots from low to high - 1 are claimed by
+     * a list, the others are free.
+     */
+    private static final class Store {
+
+        private final Node[] items;
+        private int low;
+        private int high;
+        // Set as soon as a second list uses the array
+        private volatile boolean shared = false;
+
+        private Store(Node[] items, int low, int high) {
+            this.items = items;
+            this.low = low;
+            this.high = high;
+        }
+    }
+
+    /**
+     * The elements as java.util.List
+     */
+    private final class Children extends AbstractList<Node> implements RandomAccess {
+
+        @Override
+        public Node get(int index) {
+            return item(index);
+        }
+
+        @Override
+        public int size() {
+            return List.this.size();
+        }
+
+        @Override
+        public Node set(int index, Node node) {
+            return List.this.set(index, node);
+        }
+
+        @Override
+        public boolean add(Node node) {
+            addChild(node);
+            return true;
+        }
+
+        @Override
+        public void add(int index, Node node) {
+            if (index < 0 || index > size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            own(1);
+            Node[] items = store.items;
+            System.arraycopy(items, index, items, index + 1, to - index);
+            items[index] = node;
+            store.high = ++to;
+            version++;
+            modCount++;
+        }
+
+        @Override
+        public Node remove(int index) {
+            Node removed = item(index);
+            if (store.shared) {
+                own(0);
+            }
+            Node[] items = store.items;
+            int at = from + index;
+            System.arraycopy(items, at + 1, items, at, to - at - 1);
+            items[--to] = null;
+            store.high = to;
+            version++;
+            modCount++;
+            return removed;
+        }
+    }
+
+    /**
+     * A hash of a list, valid as long as the list has the version it was
+     * computed for and the lists nested in it still have the same hashes.
+     */
+    private static final class Hash {
+
+        private final int hash;
+        private final long version;
+        private final List[] nested;
+        private final Hash[] nestedHashes;
+
+        private Hash(int hash, long version, List[] nested, Hash[] nestedHashes) {
+            this.hash = hash;
+            this.version = version;
+            this.nested = nested;
+            this.nestedHashes = nestedHashes;
+        }
+
+        private boolean valid(long current) {
+            if (version != current) {
+                return false;
+            }
+            for (int i = 0; i < nested.length; i++) {
+                if (nested[i].hash() != nestedHashes[i]) {
+                    return false;
+                }
+            }
             return true;
         }
+    }
 
-        return false;
+    private static final class Parsed {
+
+        private final Node program;
+        private final Environment env;
+        private final long epoch;
+
+        private Parsed(Node program, Environment env, long epoch) {
+            this.program = program;
+            this.env = env;
+            this.epoch = epoch;
+        }
     }
 }
@@ -24,45 +24,114 @@ import ch.uprisesoft.yali.ast.node.word.NoWord;
 import ch.uprisesoft.yali.ast.node.word.QuotedWord;
 import ch.uprisesoft.yali.ast.node.word.SymbolWord;
 import ch.uprisesoft.yali.lexer.Token;
+import ch.uprisesoft.yali.lexer.TokenType;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.regex.Pattern;
 
 public abstract class Node {
 
-    protected int line = 0;
-    protected int col = 0;
+    // Marks shared nodes, see share()
+    private static final java.util.List<Token> SHARED = Collections.unmodifiableList(new ArrayList<>());
+
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    // Line in the upper, column in the lower 32 bits
+    private long position = 0;
     protected NodeType type;
-    protected java.util.List<Node> children = new ArrayList<>();
-    protected java.util.List<Token> token = new ArrayList<>();
+    protected java.util.List<Node> children;
+    // The source tokens, only kept by the parser in debug mode
+    private java.util.List<Token> token;
 
     public Node(NodeType type) {
+        this(type, new ArrayList<>());
+    }
+
+    /**
+     * For nodes with a fixed list of children, leaf nodes pass an empty
+     * read only list.
+     */
+    protected Node(NodeType type, java.util.List<Node> children) {
         this.type = type;
+        this.children = children;
+    }
+
+    /**
+     * Makes the node immutable, for canonical instances shared by all
+     * programs and interpreters. Setting tokens or the position fails
+     * afterwards, so shared nodes can be compared by identity.
+     */
+    protected final void share() {
+        token = SHARED;
+    }
+
+    public boolean isShared() {
+        return token == SHARED;
     }
 
     public void setPosInSource(int line, int col) {
-        this.line = line;
-        this.col = col;
+        if (isShared()) {
+            throw new UnsupportedOperationException("Shared node " + this + " is immutable");
+        }
+        this.position = ((long) line << 32) | (col & 0xffffffffL);
     }
 
+    /**
+     * The source tokens of this node. Unless the parser kept them in debug
+     * mode, this is a single token rebuilt from the node and its position.
+     *
+     * @return the tokens, never empty
+     */
     public java.util.List<Token> token() {
+        if (token == null || token.isEmpty()) {
+            return Collections.singletonList(new Token(tokenType(), toString(), getLine(), getCol(), -1));
+        }
         return token;
     }
 
+    /**
+     * Keeps a source token and takes the position from it
+     */
     public void token(Token token) {
+        if (this.token == null) {
+            this.token = new ArrayList<>();
+        }
         this.token.add(token);
-        this.line = token.getLine();
-        this.col = token.getPos();
+        setPosInSource(token.getLine(), token.getPos());
     }
     
     public void token(java.util.List<Token> token) {
+        if (this.token == null) {
+            this.token = new ArrayList<>();
+        }
         this.token.addAll(token);
     }
 
     public int getLine() {
-        return line;
+        return (int) (position >>> 32);
     }
 
     public int getCol() {
-        return col;
+        return (int) position;
+    }
+
+    private TokenType tokenType() {
+        switch (type) {
+            case INTEGER:
+            case FLOAT:
+                return TokenType.NUMBER;
+            case QUOTE:
+                return TokenType.QUOTE;
+            case REFERENCE:
+                return TokenType.REFERENCE;
+            case NIL:
+                return TokenType.NIL;
+            case BOOLEAN:
+                return toString().equals("true") ? TokenType.TRUE : TokenType.FALSE;
+            default:
+                return TokenType.SYMBOL;
+        }
     }
 
     public void addChild(Node node) {
@@ -147,6 +216,20 @@ public abstract class Node {
         return (List) this;
     }
 
+    public Array toArray() throws NodeTypeException {
+        if (this.type() != NodeType.ARRAY) {
+            throw new NodeTypeException(this, this.type(), NodeType.ARRAY);
+        }
+        return (Array) this;
+    }
+
+    public Dictionary toDictionary() throws NodeTypeException {
+        if (this.type() != NodeType.DICTIONARY) {
+            throw new NodeTypeException(this, this.type(), NodeType.DICTIONARY);
+        }
+        return (Dictionary) this;
+    }
+
     public NoWord toNoWord() throws NodeTypeException {
         if (this.type() != NodeType.NONE) {
             throw new NodeTypeException(this, this.type(), NodeType.NONE);
@@ -154,8 +237,8 @@ public abstract class Node {
         return (NoWord) this;
     }
 
-    public static BooleanWord bool(Boolean bool) {
-        return new BooleanWord(bool);
+    public static BooleanWord bool(boolean bool) {
+        return bool ? BooleanWord.TRUE : BooleanWord.FALSE;
     }
 
     public static SymbolWord string(String str) {
@@ -166,20 +249,20 @@ public abstract class Node {
         return new SymbolWord(str);
     }
 
-    public static FloatWord flt(Double f) {
+    public static FloatWord flt(double f) {
         return new FloatWord(f);
     }
 
-    public static IntegerWord integer(Integer i) {
-        return new IntegerWord(i);
+    public static IntegerWord integer(long i) {
+        return IntegerWord.of(i);
     }
 
     public static NilWord nil() {
-        return new NilWord();
+        return NilWord.NIL;
     }
 
     public static NoWord none() {
-        return new NoWord();
+        return NoWord.NONE;
     }
 
     public static QuotedWord quote(String quote) {
@@ -191,4 +274,30 @@ public abstract class Node {
         l.addChildren(list);
         return l;
     }
+
+    /**
+     * An element as it would be read from source. Elements of literal lists
+     * are symbols, so numbers and booleans among them have to be converted to
+     * be used as such.
+     */
+    public static Node literal(Node value) {
+        if (!value.type().equals(NodeType.SYMBOL)) {
+            return value;
+        }
+
+        String symbol = value.toSymbolWord().getSymbol();
+        if (NUMBER.matcher(symbol).matches()) {
+            if (symbol.contains(".")) {
+                return new FloatWord(Double.parseDouble(symbol));
+            }
+            return IntegerWord.of(new BigInteger(symbol));
+        } else if (symbol.equalsIgnoreCase("true")) {
+            return Node.bool(true);
+        } else if (symbol.equalsIgnoreCase("false")) {
+            return Node.bool(false);
+        } else if (symbol.equalsIgnoreCase("nil")) {
+            return Node.nil();
+        }
+        return value;
+    }
 }
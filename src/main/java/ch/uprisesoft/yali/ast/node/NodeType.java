@@ -16,5 +16,5 @@
 package ch.uprisesoft.yali.ast.node;
 
 public enum NodeType {
-    REFERENCE, QUOTE, FLOAT, INTEGER, SYMBOL, BOOLEAN, NIL, LIST, PROCCALL, PROCEDURE, NONE, NAME, NUMBER;
+    REFERENCE, QUOTE, FLOAT, INTEGER, SYMBOL, BOOLEAN, NIL, LIST, ARRAY, DICTIONARY, PROCCALL, PROCEDURE, NONE, NAME, NUMBER;
 }
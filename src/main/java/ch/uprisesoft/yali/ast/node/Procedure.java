@@ -17,6 +17,7 @@ package ch.uprisesoft.yali.ast.node;
 
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
 import ch.uprisesoft.yali.runtime.procedures.FunctionType;
+import ch.uprisesoft.yali.scope.Symbol;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,8 +32,11 @@ public class Procedure extends Node {
 
     private String name;
     private List<String> args = new ArrayList<>();
+    private Symbol[] argSymbols;
+    private Symbol[] slots;
     private BiFunction<Interpreter, List<Node>, Optional<Node>> nativeCall;
     private String source;
+    private boolean passing = false;
 
     FunctionType funType = FunctionType.YALI;
 
@@ -62,6 +66,21 @@ public class Procedure extends Node {
         return this;
     }
 
+    /**
+     * Marks a native procedure which results in its last argument, e.g.
+     * output. A call evaluated as that argument may be a tail call.
+     *
+     * @return this procedure
+     */
+    public Procedure passing() {
+        this.passing = true;
+        return this;
+    }
+
+    public boolean isPassing() {
+        return passing;
+    }
+
     public BiFunction<Interpreter, List<Node>, Optional<Node>> getSimpleNativeCall() {
         return nativeCall;
     }
@@ -76,6 +95,8 @@ public class Procedure extends Node {
 
     public void setArgs(List<String> args) {
         this.args = args;
+        this.argSymbols = null;
+        this.slots = null;
     }
 
     public int getArity() {
@@ -90,6 +111,51 @@ public class Procedure extends Node {
         return args;
     }
 
+    /**
+     * @return the interned parameter names, in order
+     */
+    public Symbol[] getArgSymbols() {
+        if (argSymbols == null || argSymbols.length != args.size()) {
+            Symbol[] symbols = new Symbol[args.size()];
+            for (int i = 0; i < symbols.length; i++) {
+                symbols[i] = Symbol.of(args.get(i));
+            }
+            argSymbols = symbols;
+        }
+        return argSymbols;
+    }
+
+    /**
+     * The names with a fixed slot in the scope of a call to this procedure:
+     * the parameters, in order, followed by the names declared with a literal
+     * local or localmake in the body. Other variables made in the scope are
+     * kept by name.
+     *
+     * @return the slot layout of the procedure scope
+     */
+    public Symbol[] getSlots() {
+        if (slots == null) {
+            Symbol local = Symbol.of("local");
+            Symbol localmake = Symbol.of("localmake");
+
+            List<Symbol> names = new ArrayList<>(Arrays.asList(getArgSymbols()));
+            for (Node statement : children) {
+                if (!statement.type().equals(NodeType.PROCCALL)
+                        || statement.getChildren().isEmpty()
+                        || !statement.getChildren().get(0).type().equals(NodeType.QUOTE)) {
+                    continue;
+                }
+                Symbol call = statement.toProcedureCall().symbol();
+                Symbol name = statement.getChildren().get(0).toQuotedWord().symbol();
+                if ((call == local || call == localmake) && !names.contains(name)) {
+                    names.add(name);
+                }
+            }
+            slots = names.toArray(new Symbol[names.size()]);
+        }
+        return slots;
+    }
+
     public String getSource() {
         return source;
     }
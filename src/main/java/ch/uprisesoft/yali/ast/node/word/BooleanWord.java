@@ -20,22 +20,53 @@ import ch.uprisesoft.yali.ast.node.NodeType;
 
 public class BooleanWord extends Word {
 
-    public BooleanWord(Boolean bool) {
+    public static final BooleanWord TRUE = new BooleanWord(true);
+    public static final BooleanWord FALSE = new BooleanWord(false);
+
+    static {
+        TRUE.share();
+        FALSE.share();
+    }
+
+    private final boolean value;
+
+    public BooleanWord(boolean value) {
         super(NodeType.BOOLEAN);
-        this.booleanWord = bool;
-        this.stringWord = bool.toString();
-        if (bool) {
-            this.floatWord = 0d;
-            this.integerWord = 0;
-        } else {
-            this.floatWord = -1d;
-            this.integerWord = -1;
-        }
+        this.value = value;
+    }
+
+    @Override
+    public Boolean getBoolean() {
+        return value;
+    }
+
+    @Override
+    public String getString() {
+        return toString();
+    }
 
+    @Override
+    public Double getFloat() {
+        return value ? 0d : -1d;
+    }
+
+    @Override
+    public Integer getInteger() {
+        return value ? 0 : -1;
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        return other.type() == NodeType.BOOLEAN && value == other.getBoolean();
+    }
+
+    @Override
+    public int hashCode() {
+        return Boolean.hashCode(value);
     }
 
     @Override
     public String toString() {
-        return this.booleanWord.toString();
+        return Boolean.toString(value);
     }
 }
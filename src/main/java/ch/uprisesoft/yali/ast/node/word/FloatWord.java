@@ -23,15 +23,54 @@ import ch.uprisesoft.yali.ast.node.NodeType;
  */
 public class FloatWord extends Word {
 
-    public FloatWord(Double floatVal) {
+    private final double value;
+
+    public FloatWord(double value) {
         super(NodeType.FLOAT);
-        this.floatWord = floatVal;
-        this.stringWord = floatVal.toString();
-        this.integerWord = floatVal.intValue();
+        this.value = value;
+    }
+
+    @Override
+    public Double getFloat() {
+        return value;
+    }
+
+    @Override
+    public Integer getInteger() {
+        return (int) value;
+    }
+
+    @Override
+    public String getString() {
+        return toString();
+    }
+
+    @Override
+    public double doubleValue() {
+        return value;
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        switch (other.type()) {
+            case FLOAT:
+            case INTEGER:
+                return Double.compare(value, other.doubleValue()) == 0;
+            case QUOTE:
+            case SYMBOL:
+                return toString().equals(other.toString());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Double.hashCode(value);
     }
 
     @Override
     public String toString() {
-        return floatWord.toString();
+        return Double.toString(value);
     }
 }
@@ -16,22 +16,186 @@
 package ch.uprisesoft.yali.ast.node.word;
 
 import ch.uprisesoft.yali.ast.node.NodeType;
+import java.math.BigInteger;
 
 /**
+ * An integer of arbitrary size. Values fitting in a long are kept as a long,
+ * larger ones as a BigInteger. Arithmetic promotes to BigInteger on overflow
+ * and falls back to long as soon as the result fits again.
+ *
+ * Use of() to get an integer, small values are preallocated and shared.
  *
  * @author uprisesoft@gmail.com
  */
 public class IntegerWord extends Word {
 
-    public IntegerWord(Integer intVal) {
+    private static final long LOW = -128;
+    private static final long HIGH = 1024;
+    private static final IntegerWord[] CACHE = new IntegerWord[(int) (HIGH - LOW)];
+
+    private static final BigInteger MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IntegerWord(LOW + i);
+            CACHE[i].share();
+        }
+    }
+
+    private final long value;
+    private final BigInteger big;
+
+    public IntegerWord(long value) {
         super(NodeType.INTEGER);
-        this.integerWord = intVal;
-        this.stringWord = intVal.toString();
-        this.floatWord = Double.valueOf(intVal.floatValue());
+        this.value = value;
+        this.big = null;
+    }
+
+    public IntegerWord(BigInteger value) {
+        super(NodeType.INTEGER);
+        if (value.compareTo(MIN) >= 0 && value.compareTo(MAX) <= 0) {
+            this.value = value.longValue();
+            this.big = null;
+        } else {
+            this.value = 0;
+            this.big = value;
+        }
+    }
+
+    public static IntegerWord of(long value) {
+        if (value >= LOW && value < HIGH) {
+            return CACHE[(int) (value - LOW)];
+        }
+        return new IntegerWord(value);
+    }
+
+    public static IntegerWord of(BigInteger value) {
+        if (value.bitLength() < 64) {
+            return of(value.longValue());
+        }
+        return new IntegerWord(value);
+    }
+
+    /**
+     * True if the value does not fit in a long
+     */
+    public boolean isBig() {
+        return big != null;
+    }
+
+    public long getLong() {
+        if (big != null) {
+            throw new ArithmeticException("Integer too large: " + big);
+        }
+        return value;
+    }
+
+    public BigInteger getBig() {
+        return big != null ? big : BigInteger.valueOf(value);
+    }
+
+    /**
+     * The value as int, for indexes and counts
+     */
+    @Override
+    public Integer getInteger() {
+        return Math.toIntExact(getLong());
+    }
+
+    @Override
+    public Double getFloat() {
+        return doubleValue();
+    }
+
+    @Override
+    public String getString() {
+        return toString();
+    }
+
+    @Override
+    public double doubleValue() {
+        return big != null ? big.doubleValue() : value;
+    }
+
+    public IntegerWord add(IntegerWord other) {
+        if (big == null && other.big == null) {
+            long result = value + other.value;
+            // Overflow if both operands have a sign different from the result
+            if (((value ^ result) & (other.value ^ result)) >= 0) {
+                return of(result);
+            }
+        }
+        return of(getBig().add(other.getBig()));
+    }
+
+    public IntegerWord sub(IntegerWord other) {
+        if (big == null && other.big == null) {
+            long result = value - other.value;
+            // Overflow if the operands have different signs and the result
+            // has not the sign of this
+            if (((value ^ other.value) & (value ^ result)) >= 0) {
+                return of(result);
+            }
+        }
+        return of(getBig().subtract(other.getBig()));
+    }
+
+    public IntegerWord mul(IntegerWord other) {
+        if (big == null && other.big == null) {
+            try {
+                return of(Math.multiplyExact(value, other.value));
+            } catch (ArithmeticException e) {
+                // Promoted below
+            }
+        }
+        return of(getBig().multiply(other.getBig()));
+    }
+
+    public IntegerWord div(IntegerWord other) {
+        if (big == null && other.big == null && !(value == Long.MIN_VALUE && other.value == -1)) {
+            return of(value / other.value);
+        }
+        return of(getBig().divide(other.getBig()));
+    }
+
+    public IntegerWord mod(IntegerWord other) {
+        if (big == null && other.big == null) {
+            return of(other.value == -1 ? 0 : value % other.value);
+        }
+        return of(getBig().remainder(other.getBig()));
+    }
+
+    public int compareTo(IntegerWord other) {
+        if (big == null && other.big == null) {
+            return Long.compare(value, other.value);
+        }
+        return getBig().compareTo(other.getBig());
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        switch (other.type()) {
+            case INTEGER:
+                return compareTo((IntegerWord) other) == 0;
+            case FLOAT:
+                return Double.compare(doubleValue(), other.doubleValue()) == 0;
+            case QUOTE:
+            case SYMBOL:
+                return toString().equals(other.toString());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        // Consistent with equal floats
+        return Double.hashCode(doubleValue());
     }
 
     @Override
     public String toString() {
-        return integerWord.toString();
+        return big != null ? big.toString() : Long.toString(value);
     }
 }
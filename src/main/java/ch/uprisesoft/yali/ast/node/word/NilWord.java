@@ -23,12 +23,29 @@ import ch.uprisesoft.yali.ast.node.NodeType;
  */
 public class NilWord extends Word {
 
+    public static final NilWord NIL = new NilWord();
+
+    static {
+        NIL.share();
+    }
+
     public NilWord() {
         super(NodeType.NIL);
-        this.stringWord = "nil";
-        this.booleanWord = null;
-        this.floatWord = null;
-        this.integerWord = null;
+    }
+
+    @Override
+    public String getString() {
+        return "nil";
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 0;
     }
 
     @Override
@@ -23,12 +23,29 @@ import ch.uprisesoft.yali.ast.node.NodeType;
  */
 public class NoWord extends Word {
 
+    public static final NoWord NONE = new NoWord();
+
+    static {
+        NONE.share();
+    }
+
     public NoWord() {
         super(NodeType.NONE);
-        this.stringWord = "";
-        this.booleanWord = null;
-        this.floatWord = null;
-        this.integerWord = null;
+    }
+
+    @Override
+    public String getString() {
+        return "";
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 1;
     }
 
     @Override
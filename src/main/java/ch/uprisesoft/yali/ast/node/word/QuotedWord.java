@@ -16,6 +16,7 @@
 package ch.uprisesoft.yali.ast.node.word;
 
 import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.scope.Symbol;
 
 /**
  *
@@ -23,14 +24,52 @@ import ch.uprisesoft.yali.ast.node.NodeType;
  */
 public class QuotedWord extends Word {
 
+    private final String quote;
+    private Symbol symbol;
+
     public QuotedWord(String quote) {
         super(NodeType.QUOTE);
         
-        this.quoteWord = quote.replace("\\ ", " ");
+        this.quote = quote.replace("\\ ", " ");
+    }
+
+    /**
+     * @return the interned name, if the word is used as a name
+     */
+    public Symbol symbol() {
+        if (symbol == null) {
+            symbol = Symbol.of(quote);
+        }
+        return symbol;
+    }
+
+    @Override
+    public String getQuote() {
+        return quote;
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        switch (other.type()) {
+            case QUOTE:
+                return quote.equals(other.getQuote());
+            case SYMBOL:
+                return quote.equals(other.getString());
+            case INTEGER:
+            case FLOAT:
+                return quote.equals(other.toString());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hashText(quote);
     }
 
     @Override
     public String toString() {
-        return quoteWord.toString();
+        return quote;
     }
 }
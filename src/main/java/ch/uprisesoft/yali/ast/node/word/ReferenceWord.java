@@ -23,13 +23,30 @@ import ch.uprisesoft.yali.ast.node.NodeType;
  */
 public class ReferenceWord extends Word {
 
+    private final String reference;
+
     public ReferenceWord(String reference) {
         super(NodeType.REFERENCE);
-        this.referenceWord = reference;
+        this.reference = reference;
+    }
+
+    @Override
+    public String getReference() {
+        return reference;
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        return other.type() == NodeType.REFERENCE && reference.equals(other.getReference());
+    }
+
+    @Override
+    public int hashCode() {
+        return reference.hashCode();
     }
 
     @Override
     public String toString() {
-        return referenceWord.toString();
+        return reference;
     }
 }
@@ -16,6 +16,7 @@
 package ch.uprisesoft.yali.ast.node.word;
 
 import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.scope.Symbol;
 
 /**
  *
@@ -23,15 +24,56 @@ import ch.uprisesoft.yali.ast.node.NodeType;
  */
 public class SymbolWord extends Word {
 
+    private final String name;
+    private Symbol symbol;
+
     public SymbolWord(String string) {
         super(NodeType.SYMBOL);
-        this.stringWord = string;
-        this.symbolWord = string;
-        
+        this.name = string;
     }    
+
+    /**
+     * @return the interned name, if the word is used as a name
+     */
+    public Symbol symbol() {
+        if (symbol == null) {
+            symbol = Symbol.of(name);
+        }
+        return symbol;
+    }
+
+    @Override
+    public String getString() {
+        return name;
+    }
+
+    @Override
+    public String getSymbol() {
+        return name;
+    }
+
+    @Override
+    protected boolean equalsWord(Word other) {
+        switch (other.type()) {
+            case SYMBOL:
+                return name.equals(other.getSymbol());
+            case QUOTE:
+                return name.equals(other.getQuote());
+            case INTEGER:
+            case FLOAT:
+                return name.equals(other.toString());
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hashText(name);
+    }
     
     @Override
     public String toString() {
-        return symbolWord.toString();
+        return name;
     }
 }
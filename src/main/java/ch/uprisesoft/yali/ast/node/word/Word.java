@@ -17,20 +17,19 @@ package ch.uprisesoft.yali.ast.node.word;
 
 import ch.uprisesoft.yali.ast.node.Node;
 import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.exception.NodeTypeException;
+import java.util.Collections;
 
+/**
+ * A word. Every subtype stores only its own value, the getters of the other
+ * representations return null unless a subtype can convert to them.
+ *
+ * @author uprisesoft@gmail.com
+ */
 public abstract class Word extends Node {
 
-    protected Double floatWord;
-    protected Integer integerWord;
-    protected String stringWord;
-    protected String symbolWord;
-    protected String quoteWord;
-    protected String referenceWord;
-    protected Boolean booleanWord;
-    protected String nilWord = "nil";
-
     public Word(NodeType type) {
-        super(type);
+        super(type, Collections.emptyList());
     }
 
     public NodeType getType() {
@@ -38,106 +37,85 @@ public abstract class Word extends Node {
     }
 
     public String getString() {
-        return stringWord;
+        return null;
     }
     
     public String getQuote() {
-        return quoteWord;
+        return null;
     }
 
     public Boolean getBoolean() {
-        return booleanWord;
+        return null;
     }
 
     public Double getFloat() {
-        return floatWord;
+        return null;
     }
 
     public Integer getInteger() {
-        return integerWord;
+        return null;
     }
 
     public String getNil() {
-        return nilWord;
+        return "nil";
     }
     
     public String getSymbol() {
-        return symbolWord;
+        return null;
     }
     
     public String getReference() {
-        return referenceWord;
+        return null;
     }    
 
-    @Override
-    public int hashCode() {
-        int hash = 7;
-        hash = 31 * hash + (floatWord == null ? 0 : floatWord.hashCode());
-        hash = 31 * hash + (integerWord == null ? 0 : integerWord.hashCode());
-        hash = 31 * hash + (quoteWord == null ? 0 : quoteWord.hashCode());
-        hash = 31 * hash + (stringWord == null ? 0 : stringWord.hashCode());
-        hash = 31 * hash + (booleanWord == null ? 0 : booleanWord.hashCode());
-        hash = 31 * hash + (referenceWord == null ? 0 : referenceWord.hashCode());
-        hash = 31 * hash + (symbolWord == null ? 0 : symbolWord.hashCode());
-        return hash;
+    /**
+     * The value of a number as primitive, without boxing
+     */
+    public double doubleValue() {
+        throw new NodeTypeException(this, type, NodeType.NUMBER);
     }
 
+    /**
+     * Compares to another word, called by equals() for words that are not
+     * identical. Nil and none equal no other word.
+     */
+    protected abstract boolean equalsWord(Word other);
+
     @Override
-    public boolean equals(Object obj) {
-        if (this == obj) {
-            return true;
-        }
-        if (obj == null) {
-            return false;
+    public abstract int hashCode();
+
+    /**
+     * The hash of a symbol or quote. Text reading as a number equals the
+     * number, so it hashes like the number does.
+     */
+    protected static int hashText(String text) {
+        if (numeric(text)) {
+            try {
+                return Double.hashCode(Double.parseDouble(text));
+            } catch (NumberFormatException e) {
+                // Just text after all
+            }
         }
+        return text.hashCode();
+    }
 
-        final Word other = (Word) obj;
-        
-        if(this.type.equals(NodeType.NIL) || this.type.equals(NodeType.NONE) || other.type.equals(NodeType.NIL) || other.type.equals(NodeType.NONE)) {
+    // A cheap check to skip parsing most text that is not a number
+    private static boolean numeric(String text) {
+        if (text.isEmpty()) {
             return false;
         }
-        
-        if (this.type.equals(NodeType.INTEGER) && other.type.equals(NodeType.INTEGER)) {
-            return this.integerWord.equals(other.integerWord);
-        }
-        
-        if (this.type.equals(NodeType.NAME) && other.type.equals(NodeType.NAME)) {
-            return this.stringWord.equals(other.stringWord);
-        }
-        
-        if (this.type.equals(NodeType.FLOAT) && other.type.equals(NodeType.FLOAT)) {
-            return this.floatWord.equals(other.floatWord);
-        }
-        
-        if (this.type.equals(NodeType.FLOAT) && other.type.equals(NodeType.INTEGER)) {
-            return this.floatWord.equals(Double.valueOf(other.integerWord));
-        }
+        char c = text.charAt(0) == '-' && text.length() > 1 ? text.charAt(1) : text.charAt(0);
+        return (c >= '0' && c <= '9') || text.endsWith("NaN") || text.endsWith("Infinity");
+    }
 
-        if (this.type.equals(NodeType.INTEGER) && other.type.equals(NodeType.FLOAT)) {
-            return Double.valueOf(this.integerWord).equals(other.floatWord);
-        }
-        
-        if (this.type.equals(NodeType.SYMBOL) && other.type.equals(NodeType.QUOTE)) {
-            return this.getSymbol().equals(other.getQuote());
-        }
-        
-        if (this.type.equals(NodeType.QUOTE) && other.type.equals(NodeType.SYMBOL)) {
-            return this.getQuote().equals(other.getString());
-        }
-        
-        if (this.type.equals(NodeType.QUOTE) && other.type.equals(NodeType.QUOTE)) {
-            return this.getQuote().equals(other.getQuote());
-        }
-        
-        if (this.type.equals(NodeType.SYMBOL) && other.type.equals(NodeType.SYMBOL)) {
-            return this.getString().equals(other.getString());
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
         }
-        
-        if (((this.type.equals(NodeType.QUOTE) || this.type.equals(NodeType.SYMBOL)) && (other.type.equals(NodeType.INTEGER) || other.type.equals(NodeType.FLOAT)))
-                || ((this.type.equals(NodeType.INTEGER) || this.type.equals(NodeType.FLOAT)) && (other.type.equals(NodeType.QUOTE) || other.type.equals(NodeType.SYMBOL)))) {
-            return this.toString().equals(other.toString());
+        if (!(obj instanceof Word)) {
+            return false;
         }
-
-        return getClass() == obj.getClass();
+        return equalsWord((Word) obj);
     }
 }
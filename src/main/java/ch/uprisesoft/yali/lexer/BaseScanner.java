@@ -42,7 +42,7 @@ import static ch.uprisesoft.yali.lexer.TokenType.STAR;
  */
 public class BaseScanner extends Scanner {
 
-    public BaseScanner(Lexer lexer, String source) {
+    public BaseScanner(Lexer lexer, CharSequence source) {
         super(lexer, source);
     }
 
@@ -146,19 +146,7 @@ public class BaseScanner extends Scanner {
 
     @Override
     protected boolean isNextSpecialChar() {
-        return peek() == ' '
-                || peek() == ':'
-                || peek() == ' '
-                || peek() == '{'
-                || peek() == '}'
-                || peek() == '['
-                || peek() == ']'
-                || peek() == '('
-                || peek() == ')'
-                || peek() == '\t'
-                || peek() == '\r'
-                || peek() == '\n'
-                || testEnd();
+        return testEnd() || isSpecial(peek());
     }
 
     @Override
@@ -167,34 +155,20 @@ public class BaseScanner extends Scanner {
             advance();
         }
 
-        String text = context.source.substring(context.start, context.current);
-
-        // Symbol is the default type
-        TokenType type = TokenType.SYMBOL;
-
-        if (text.toLowerCase().equals("true")) {
-            type = TokenType.TRUE;
-        }
-
-        if (text.toLowerCase().equals("false")) {
-            type = TokenType.FALSE;
-        }
-
-        if (text.toLowerCase().equals("nil")) {
-            type = TokenType.NIL;
-        }
-
-        if (text.toLowerCase().equals("to")) {
+        if (isKeyword("to")) {
             addTo(TokenType.TO);
-            return;
-        }
-
-        if (text.toLowerCase().equals("end")) {
+        } else if (isKeyword("end")) {
             addEnd(TokenType.END);
-            return;
+        } else if (isKeyword("true")) {
+            addToken(TokenType.TRUE);
+        } else if (isKeyword("false")) {
+            addToken(TokenType.FALSE);
+        } else if (isKeyword("nil")) {
+            addToken(TokenType.NIL);
+        } else {
+            // Symbol is the default type
+            addToken(TokenType.SYMBOL);
         }
-
-        addToken(type);
     }
 
     protected void question() {
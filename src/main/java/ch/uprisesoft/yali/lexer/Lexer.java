@@ -18,26 +18,83 @@ package ch.uprisesoft.yali.lexer;
 import java.util.List;
 
 /**
+ * Turns source text into tokens. scan() returns all tokens at once. open()
+ * scans lazily instead: the tokens are added to the returned list when
+ * fill() asks for them, so a parser can start before the whole source is
+ * scanned and stops scanning where it fails. buffer() scans lazily as well,
+ * to a compact TokenBuffer instead of Token objects.
+ *
+ * The source is any CharSequence, for example a String or a CharBuffer
+ * decoded from a (memory mapped) file. It must not change while it is
+ * scanned. A ReaderSource reads the characters only when the scanner gets to
+ * them, so reading and scanning overlap. Tokens copy their text, so they do
+ * not keep the source alive.
  *
  * @author uprisesoft@gmail.com
  */
 public class Lexer {
 
-    protected String source;
+    protected CharSequence source;
 
     private Scanner scanner;
+    private boolean done;
+
+    public List<Token> scan(CharSequence source) {
+        List<Token> tokens = open(source);
+        while (!done) {
+            next();
+        }
+        return tokens;
+    }
 
-    public List<Token> scan(String source) {
+    /**
+     * Starts scanning a source lazily
+     *
+     * @return the tokens scanned so far, see fill()
+     */
+    public List<Token> open(CharSequence source) {
         scanner = new BaseScanner(this, source);
         this.source = source;
+        done = false;
+        return scanner.getTokens();
+    }
 
-        while (!scanner.isAtEnd()) {
-            scanner.scanToken();
+    /**
+     * Starts scanning a source lazily to a compact buffer
+     *
+     * @return the buffer with the tokens scanned so far, see fill()
+     */
+    public TokenBuffer buffer(CharSequence source) {
+        TokenBuffer buffer = new TokenBuffer(source);
+        scanner = new BaseScanner(this, new ScannerContext(source, buffer));
+        this.source = source;
+        done = false;
+        return buffer;
+    }
+
+    /**
+     * Scans until the token at an index is known or the source is scanned
+     * completely. The last token is always EOF.
+     *
+     * @param index zero based
+     * @return true if there is a token at the index
+     */
+    public boolean fill(int index) {
+        while (scanner.getContext().count() <= index && !done) {
+            next();
         }
+        return index < scanner.getContext().count();
+    }
 
-        return  scanner.getTokens();
+    private void next() {
+        // The scanner changes when a list starts or ends
+        if (scanner.isAtEnd()) {
+            done = true;
+        } else {
+            scanner.scanToken();
+        }
     }
-    
+
     public void setScanner(Scanner scanner) {
         this.scanner = scanner;
     }
@@ -27,7 +27,7 @@ public class ListScanner extends Scanner {
     private int listDepth = 1;
     
 
-    public ListScanner(Lexer lexer, String source) {
+    public ListScanner(Lexer lexer, CharSequence source) {
         super(lexer, source);
     }
 
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.lexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * A source read from a Reader in chunks, as far as it is looked at. The lexer
+ * only asks for the characters it scans, so a parser pulling tokens reads the
+ * source while it parses.
+ *
+ * The characters read are kept, lists and procedure definitions keep their
+ * source text. length() and toString() read the whole source. Read errors
+ * are thrown as UncheckedIOException. The reader is not closed.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class ReaderSource implements CharSequence {
+
+    private static final int CHUNK = 8192;
+
+    private final Reader reader;
+    private char[] chars = new char[CHUNK];
+    private int length = 0;
+    private boolean eof = false;
+
+    public ReaderSource(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads until the character at an index is known or the reader is
+     * exhausted
+     *
+     * @return true if there is a character at the index
+     */
+    public boolean has(int index) {
+        while (index >= length && !eof) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+            }
+            try {
+                int read = reader.read(chars, length, Math.min(CHUNK, chars.length - length));
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return index < length;
+    }
+
+    @Override
+    public int length() {
+        has(Integer.MAX_VALUE - 1);
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || !has(index)) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || (end > 0 && !has(end - 1))) {
+            throw new IndexOutOfBoundsException("Range: " + start + " to " + end);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length());
+    }
+}
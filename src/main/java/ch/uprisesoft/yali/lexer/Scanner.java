@@ -25,10 +25,34 @@ import java.util.List;
  */
 public abstract class Scanner {
 
+    // Classes of the ASCII characters, other characters are classified by
+    // Character
+    protected static final byte DIGIT = 1;
+    protected static final byte ALPHA = 2;
+    protected static final byte SPECIAL = 4;
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = ALPHA;
+            CLASSES[Character.toUpperCase(c)] = ALPHA;
+        }
+        for (char c : "_-!?".toCharArray()) {
+            CLASSES[c] = ALPHA;
+        }
+        // Characters ending a word outside of lists
+        for (char c : " \t\r\n:{}[]()".toCharArray()) {
+            CLASSES[c] = SPECIAL;
+        }
+    }
+
     protected final Lexer lexer;
     protected final ScannerContext context;
 
-    public Scanner(Lexer lexer, String source) {
+    public Scanner(Lexer lexer, CharSequence source) {
         this(lexer, new ScannerContext(source));
     }
 
@@ -49,7 +73,7 @@ public abstract class Scanner {
         context.start = context.current;
         boolean end = testEnd();
         if (end == true) {
-            context.tokens.add(new Token(EOF, "", context.line, context.linePos, context.current));
+            context.add(EOF, context.current, 0, context.linePos, context.current);
         }
         return end;
     }
@@ -57,7 +81,7 @@ public abstract class Scanner {
     public abstract void scanToken();
 
     protected boolean testEnd() {
-        return context.current >= context.source.length();
+        return !context.has(context.current);
     }
 
     protected void string(TokenType type) {
@@ -73,17 +97,46 @@ public abstract class Scanner {
     protected abstract boolean isNextSpecialChar();
 
     protected boolean isDigit(char c) {
-        return Character.isDigit(c);
+        return c < 128 ? CLASSES[c] == DIGIT : Character.isDigit(c);
     }
 
     protected abstract void symbol();
 
     protected boolean isAlpha(char c) {
-        return Character.isAlphabetic(c) || String.valueOf(c).equals("_") || String.valueOf(c).equals("-") || String.valueOf(c).equals("!") || String.valueOf(c).equals("?");
+        return c < 128 ? CLASSES[c] == ALPHA : Character.isAlphabetic(c);
     }
 
     protected boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+        return c < 128 ? (CLASSES[c] & (ALPHA | DIGIT)) != 0 : Character.isAlphabetic(c) || Character.isDigit(c);
+    }
+
+    /**
+     * Checks if a character ends a word outside of lists. Not true at the
+     * end of the source, '\0' is no special character.
+     */
+    protected boolean isSpecial(char c) {
+        return c < 128 && CLASSES[c] == SPECIAL;
+    }
+
+    /**
+     * Compares the scanned text to a lower case keyword, ignoring case and
+     * without copying the text
+     */
+    protected boolean isKeyword(String keyword) {
+        int length = context.current - context.start;
+        if (length != keyword.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = context.source.charAt(context.start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     protected void number() {
@@ -130,7 +183,7 @@ public abstract class Scanner {
     }
 
     protected char peekNext() {
-        if (context.current + 1 >= context.source.length()) {
+        if (!context.has(context.current + 1)) {
             return '\0';
         }
         return context.source.charAt(context.current + 1);
@@ -143,26 +196,20 @@ public abstract class Scanner {
     }
 
     protected void addToken(TokenType type) {
-        String text = context.source.substring(context.start, context.current);
-        context.tokens.add(new Token(type, text, context.line, context.linePos - text.length(), context.current - text.length()));
+        int length = context.current - context.start;
+        context.add(type, context.start, length, context.linePos - length, context.start);
     }
 
     protected void addTo(TokenType type) {
-        String text = context.source.substring(context.start, context.current);
-        context.funStart = new Token(type, text, context.line, context.linePos - text.length(), context.current - text.length());
-
-        context.tokens.add(context.funStart);
+        context.funStart = context.start;
+        addToken(type);
     }
 
     protected void addEnd(TokenType type) {
-        String text = context.source.substring(context.funStart.getAbsolute(), context.current);
-        int absolutePos = context.current - context.source.substring(context.start, context.current).length();
-
-        context.funEnd = new Token(type, text, context.line, context.linePos - text.length(), absolutePos);
-
-        context.tokens.add(context.funEnd);
+        // The text of the end token is the whole definition
+        int length = context.current - context.funStart;
+        context.add(type, context.funStart, length, context.linePos - length, context.start);
 
-        context.funStart = null;
-        context.funEnd = null;
+        context.funStart = -1;
     }
 }
@@ -23,8 +23,10 @@ import java.util.List;
  */
 public class ScannerContext {
 
-    protected final String source;
+    protected final CharSequence source;
+    // Either the tokens or the buffer is null
     protected final List<Token> tokens;
+    protected final TokenBuffer buffer;
 
     protected int start = 0;
     protected int current = 0;
@@ -34,12 +36,55 @@ public class ScannerContext {
     protected int parenDepth = 0;
     protected int braceDepth = 0;
 
-    protected Token funStart;
-    protected Token funEnd;
+    // Where the definition being scanned starts, -1 outside of definitions
+    protected int funStart = -1;
 
-    public ScannerContext(String source) {
+    public ScannerContext(CharSequence source) {
         this.source = source;
         this.tokens = new ArrayList<>();
+        this.buffer = null;
+    }
+
+    /**
+     * A context adding the tokens to a buffer instead of a list
+     */
+    public ScannerContext(CharSequence source, TokenBuffer buffer) {
+        this.source = source;
+        this.tokens = null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return the number of tokens scanned so far
+     */
+    protected int count() {
+        return buffer != null ? buffer.size() : tokens.size();
+    }
+
+    /**
+     * Adds a token spanning the source from start to start + length
+     *
+     * @param absolute the position of the token, it only differs from start
+     * for END tokens, see TokenBuffer.absolute()
+     */
+    protected void add(TokenType type, int start, int length, int pos, int absolute) {
+        if (buffer != null) {
+            buffer.add(type, start, length, line, pos);
+        } else {
+            String text = source.subSequence(start, start + length).toString();
+            tokens.add(new Token(type, text, line, pos, absolute));
+        }
+    }
+
+    /**
+     * Checks if the source has a character at an index, without asking a
+     * source that is read lazily for its full length
+     */
+    protected boolean has(int index) {
+        if (source instanceof ReaderSource) {
+            return ((ReaderSource) source).has(index);
+        }
+        return index < source.length();
     }
 }
 
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Tokens stored compactly, in parallel arrays instead of one Token object
+ * each. A token is known by its index. Its text is not copied when it is
+ * scanned, lexeme() cuts it from the source when asked for and token()
+ * makes a Token of it.
+ *
+ * The text of an END token is the whole definition it ends, from the TO
+ * token up to and including the end keyword, as in Token.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+
+    private int size = 0;
+    private int[] types = new int[256];
+    private int[] starts = new int[256];
+    private int[] lengths = new int[256];
+    private int[] lines = new int[256];
+    private int[] positions = new int[256];
+
+    public TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line, int pos) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        positions[size] = pos;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[check(index)]];
+    }
+
+    public String lexeme(int index) {
+        int start = starts[check(index)];
+        return source.subSequence(start, start + lengths[index]).toString();
+    }
+
+    public int line(int index) {
+        return lines[check(index)];
+    }
+
+    public int pos(int index) {
+        return positions[check(index)];
+    }
+
+    /**
+     * The position of a token in the source. The text of an END token starts
+     * at its definition, the keyword itself is at the end of the text.
+     */
+    public int absolute(int index) {
+        int end = starts[check(index)] + lengths[index];
+        return types[index] == TokenType.END.ordinal() ? end - 3 : starts[index];
+    }
+
+    /**
+     * @return a new token for the one at the index
+     */
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), line(index), pos(index), absolute(index));
+    }
+
+    private int check(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return index;
+    }
+}
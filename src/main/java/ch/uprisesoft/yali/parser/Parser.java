@@ -19,44 +19,97 @@ import ch.uprisesoft.yali.ast.node.*;
 import ch.uprisesoft.yali.ast.node.word.BooleanWord;
 import ch.uprisesoft.yali.ast.node.word.FloatWord;
 import ch.uprisesoft.yali.ast.node.word.NilWord;
+import ch.uprisesoft.yali.ast.node.word.NoWord;
 import ch.uprisesoft.yali.ast.node.word.QuotedWord;
 import ch.uprisesoft.yali.ast.node.word.SymbolWord;
-import ch.uprisesoft.yali.lexer.Token;
+import ch.uprisesoft.yali.lexer.TokenBuffer;
 import ch.uprisesoft.yali.lexer.TokenType;
 import ch.uprisesoft.yali.ast.node.word.IntegerWord;
 import ch.uprisesoft.yali.exception.TokenTypeException;
 import ch.uprisesoft.yali.lexer.Lexer;
+import ch.uprisesoft.yali.lexer.ReaderSource;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
+import java.io.Reader;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
+/**
+ * Parses a program in a single pass. The arity of a call is the arity of the
+ * procedure definition, so a call can only be parsed once the procedure is
+ * defined. Definitions are made as soon as their header is read.
+ *
+ * A name that is not defined yet is parsed as a plain word and remembered. If
+ * one of these names is defined later on, the program is parsed again from the
+ * first statement using an unknown name, with all definitions known by then.
+ * Programs defining their procedures before using them are read once. If
+ * parsing fails after an unknown name, the rest of the program is searched
+ * for definitions before parsing again, the error may come from an unknown
+ * arity. A name that is never defined stays a word and fails when run.
+ *
+ * Tokens are pulled from the lexer as the parser gets to them, and a source
+ * given as Reader is read as the lexer gets to it.
+ *
+ * @author uprisesoft@gmail.com
+ */
 public class Parser {
 
+    // Keep all source tokens in the nodes, see debug()
+    private static volatile boolean debug = Boolean.getBoolean("yali.debug");
 
-    private java.util.List<Token> tokens = new ArrayList<>();
+    private TokenBuffer tokens;
     private final Interpreter it;
-    private String source;
+    private Lexer lexer;
+    private CharSequence source;
 
     private Integer current = 0;
     private boolean inParens = false;
 
+    // Names parsed as words because no procedure was defined for them
+    private final Set<String> unknown = new HashSet<>();
+
     public Parser(Interpreter functions) {
         this.it = functions;
     }
 
+    /**
+     * Turns the debug mode on or off for all parsers. In debug mode, every
+     * node keeps the tokens it was parsed from and lists the tokens of all
+     * their elements. Otherwise nodes only keep their position, which saves
+     * a lot of memory for large lists. Defaults to the system property
+     * yali.debug.
+     *
+     * @param on true to keep the tokens
+     */
+    public static void debug(boolean on) {
+        debug = on;
+    }
+
+    public static boolean debug() {
+        return debug;
+    }
+
     public Interpreter getFunctions() {
         return it;
     }
     
-    public Node read(String source) {
+    public Node read(CharSequence source) {
         this.source = source;
-        this.tokens = new Lexer().scan(source);
+        this.lexer = new Lexer();
+        this.tokens = lexer.buffer(source);
 
         return read();
     }
+
+    /**
+     * Parses a source while reading it. The reader is not closed.
+     */
+    public Node read(Reader reader) {
+        return read(new ReaderSource(reader));
+    }
     
     public Node read(ch.uprisesoft.yali.ast.node.List list) {
-        tokens.clear();
-        
 /*        StringBuilder newSource = new StringBuilder();
         
         for (Token t: list.token().subList(1, list.token().size()-1)) {
@@ -69,54 +122,106 @@ public class Parser {
     }
 
     private Node read() {
-        parseFunctionHeaders();
-        parseFunctionAliases();
+        current = 0;
+        inParens = false;
+        unknown.clear();
+
+        java.util.List<Node> statements = new ArrayList<>();
+        // The first statement using an unknown name, and its index
+        int restart = -1;
+        int restartAt = 0;
+        TokenTypeException failure = null;
 
-        Node program = new List();
         while (!isAtEnd()) {
-            Node expression = expression();
-            if (!expression.type().equals(NodeType.NONE) && !expression.type().equals(NodeType.PROCEDURE)) {
-                program.addChild(expression);
+            int start = current;
+            int known = unknown.size();
+
+            Node expression = null;
+            try {
+                expression = expression();
+            } catch (TokenTypeException e) {
+                failure = e;
             }
-        }
-        return program;
-    }
 
-    private void parseFunctionHeaders() {
-        while (!isAtEnd()) {
-            if (match(TokenType.TO)) {
+            if (restart < 0 && unknown.size() > known) {
+                restart = start;
+                restartAt = statements.size();
+            }
 
-                Token defStartToken = previous();
-                Procedure fun = new Procedure(consume(TokenType.SYMBOL).getLexeme());
-                java.util.List<String> args = new java.util.ArrayList<>();
-                while (!check(TokenType.NEWLINE)) {
-                    args.add(consume(TokenType.REFERENCE).getLexeme().substring(1));
+            if (failure != null) {
+                if (restart < 0) {
+                    throw failure;
                 }
-                fun.setArgs(args);
-                advance();
+                defineRemaining();
+                break;
+            }
+            add(statements, expression);
+        }
 
-                fun.setPosInSource(defStartToken.getLine(), defStartToken.getPos());
-                it.env().define(fun);
+        if (restart >= 0 && definedLater()) {
+            // Unknown names are words from now on, no further restarts
+            statements.subList(restartAt, statements.size()).clear();
+            current = restart;
+            inParens = false;
+            while (!isAtEnd()) {
+                add(statements, expression());
             }
-            advance();
+        } else if (failure != null) {
+            // Not caused by an unknown arity
+            throw failure;
         }
-        current = 0;
-    }
 
-    private void parseFunctionAliases() {
-        while (!isAtEnd()) {
-            if (match(TokenType.SYMBOL) && previous().getLexeme().equalsIgnoreCase("alias")) {
+        return new List(statements);
+    }
 
-                String original = consume(TokenType.QUOTE).getLexeme().substring(1);
-                String alias = consume(TokenType.QUOTE).getLexeme().substring(1);
+    private void add(java.util.List<Node> statements, Node expression) {
+        if (!expression.type().equals(NodeType.NONE) && !expression.type().equals(NodeType.PROCEDURE)) {
+            statements.add(expression);
+        }
+    }
 
-                it.env().alias(original, alias);
+    private boolean definedLater() {
+        for (String name : unknown) {
+            if (it.env().defined(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
+    /**
+     * Defines the procedures of the rest of the program by their headers
+     */
+    private void defineRemaining() {
+        while (!isAtEnd()) {
+            if (match(TokenType.TO) && check(TokenType.SYMBOL)) {
+                try {
+                    header(previous());
+                } catch (TokenTypeException e) {
+                    // Fails again when parsed
+                }
+            } else {
                 advance();
             }
-            advance();
         }
-        current = 0;
+    }
+
+    /**
+     * Reads the name and parameters of a definition and defines it, so the
+     * body and the rest of the program know its arity
+     */
+    private Procedure header(int defStartToken) {
+        Procedure fun = new Procedure(tokens.lexeme(consume(TokenType.SYMBOL)));
+        java.util.List<String> args = new java.util.ArrayList<>();
+        while (!check(TokenType.NEWLINE) && !isAtEnd()) {
+            args.add(tokens.lexeme(consume(TokenType.REFERENCE)).substring(1));
+        }
+        fun.setArgs(args);
+        advance();
+
+        fun.setPosInSource(tokens.line(defStartToken), tokens.pos(defStartToken));
+        it.env().define(fun);
+        return fun;
     }
 
     private Node expression() {
@@ -130,18 +235,13 @@ public class Parser {
 
         if (match(TokenType.TO)) {
 
-            Procedure fun = (Procedure) it.env().procedure(consume(TokenType.SYMBOL).getLexeme());
-
-            while (!check(TokenType.NEWLINE)) {
-                advance();
-            }
-            advance();
+            Procedure fun = header(previous());
 
             while (!check(TokenType.END)) {
                 fun.addChild(expression());
 
                 // Check for unclosed function body
-                if (peek().type().equals(TokenType.EOF)) {
+                if (tokens.type(peek()).equals(TokenType.EOF)) {
                     throw new TokenTypeException(TokenType.END, TokenType.EOF);
                 }
 
@@ -149,7 +249,7 @@ public class Parser {
             }
             consume(TokenType.END);
 
-            fun.setSource(previous().getLexeme());
+            fun.setSource(tokens.lexeme(previous()));
 
             match(TokenType.NEWLINE);
 
@@ -164,14 +264,21 @@ public class Parser {
     private Node funCall() {
         Node node;
 
-        if (peek().type().equals(TokenType.SYMBOL) && it.env().defined(peek().getLexeme().toLowerCase())) {
+        if (check(TokenType.SYMBOL) && tokens.lexeme(peek()).equalsIgnoreCase("alias")
+                && lookahead(1) == TokenType.QUOTE && lookahead(2) == TokenType.QUOTE) {
+            // Aliases are known to the rest of the program right away
+            it.env().alias(tokens.lexeme(current + 1).substring(1),
+                    tokens.lexeme(current + 2).substring(1));
+        }
+
+        if (tokens.type(peek()).equals(TokenType.SYMBOL) && it.env().defined(tokens.lexeme(peek()).toLowerCase())) {
 
-            String name = peek().getLexeme();
+            String name = tokens.lexeme(peek());
             int arity = it.env().procedure(name).getArity();
             advance();
 
             node = new Call(name);
-            node.setPosInSource(peek().getLine(), peek().getPos());
+            node.setPosInSource(tokens.line(peek()), tokens.pos(peek()));
 
             if (inParens) {
                 while (!check(TokenType.RIGHT_PAREN)) {
@@ -184,6 +291,9 @@ public class Parser {
             }
 
         } else {
+            if (check(TokenType.SYMBOL)) {
+                unknown.add(tokens.lexeme(peek()).toLowerCase());
+            }
             node = equality();
         }
 
@@ -195,7 +305,7 @@ public class Parser {
 
         if (match(TokenType.EQUAL, TokenType.EQUAL_EQUAL, TokenType.BANG_EQUAL)) {
 
-            TokenType operator = previous().type();
+            TokenType operator = tokens.type(previous());
             Node left = node;
             Node right = comparison();
 
@@ -209,7 +319,7 @@ public class Parser {
 
             node.addChild(left);
             node.addChild(right);
-            node.setPosInSource(previous().getLine(), previous().getPos());
+            node.setPosInSource(tokens.line(previous()), tokens.pos(previous()));
         }
 
         return node;
@@ -220,7 +330,7 @@ public class Parser {
 
         while (match(TokenType.LESS, TokenType.GREATER, TokenType.LESS_EQUAL, TokenType.GREATER_EQUAL)) {
 
-            TokenType operator = previous().type();
+            TokenType operator = tokens.type(previous());
             Node left = node;
             Node right = term();
 
@@ -242,7 +352,7 @@ public class Parser {
 
             node.addChild(left);
             node.addChild(right);
-            node.setPosInSource(previous().getLine(), previous().getPos());
+            node.setPosInSource(tokens.line(previous()), tokens.pos(previous()));
         }
 
         return node;
@@ -253,7 +363,7 @@ public class Parser {
 
         while (match(TokenType.PLUS, TokenType.MINUS)) {
 
-            TokenType operator = previous().type();
+            TokenType operator = tokens.type(previous());
             Node left = node;
             Node right = factor();
 
@@ -267,7 +377,7 @@ public class Parser {
 
             node.addChild(left);
             node.addChild(right);
-            node.setPosInSource(previous().getLine(), previous().getPos());
+            node.setPosInSource(tokens.line(previous()), tokens.pos(previous()));
         }
 
         return node;
@@ -278,7 +388,7 @@ public class Parser {
 
         while (match(TokenType.STAR, TokenType.SLASH)) {
 
-            TokenType operator = previous().type();
+            TokenType operator = tokens.type(previous());
             Node left = node;
             Node right = word();
 
@@ -292,52 +402,55 @@ public class Parser {
 
             node.addChild(left);
             node.addChild(right);
-            node.setPosInSource(previous().getLine(), previous().getPos());
+            node.setPosInSource(tokens.line(previous()), tokens.pos(previous()));
         }
 
         return node;
     }
 
     private Node word() {
-        Node node = Node.none();
+        // Not the shared none, it may get a position
+        Node node = new NoWord();
 
         if (match(TokenType.FALSE)) {
             node = new BooleanWord(Boolean.FALSE);
-            node.token(previous());
+            mark(node, previous());
         } else if (match(TokenType.TRUE)) {
             node = new BooleanWord(Boolean.TRUE);
-            node.token(previous());
+            mark(node, previous());
         } else if (match(TokenType.NIL)) {
             node = new NilWord();
-            node.token(previous());
+            mark(node, previous());
         } else if (match(TokenType.NUMBER)) {
-            Token token = previous();
+            int token = previous();
+            String lexeme = tokens.lexeme(token);
 
-            if (token.getLexeme().contains(".")) {
-                node = new FloatWord(Double.parseDouble(token.getLexeme()));
+            if (lexeme.contains(".")) {
+                node = new FloatWord(Double.parseDouble(lexeme));
             } else {
-                node = new IntegerWord(Integer.parseInt(token.getLexeme()));
+                node = new IntegerWord(new BigInteger(lexeme));
             }
 
-            node.token(token);
-        } else if (match(TokenType.SYMBOL)) {
-            node = new SymbolWord(previous().getLexeme());
-            node.token(previous());
+            mark(node, token);
+        } else if (match(TokenType.SYMBOL, TokenType.QUESTION)) {
+            // ? is kept as symbol, templates put their values in its place
+            node = new SymbolWord(tokens.lexeme(previous()));
+            mark(node, previous());
         } else if (match(TokenType.QUOTE)) {
-            node = new QuotedWord(previous().getLexeme().substring(1));
-            node.token(previous());
+            node = new QuotedWord(tokens.lexeme(previous()).substring(1));
+            mark(node, previous());
         } else if (match(TokenType.REFERENCE)) {
             node = new Call("thing");
-            SymbolWord symbol = new SymbolWord(previous().getLexeme().substring(1));
-            symbol.token(previous());
+            SymbolWord symbol = new SymbolWord(tokens.lexeme(previous()).substring(1));
+            mark(symbol, previous());
             node.addChild(symbol);
-            node.token(previous());
+            mark(node, previous());
         } else if (match(TokenType.LEFT_BRACKET)) {
             node = parseList();
         } else if (match(TokenType.LEFT_PAREN)) {
             inParens = true;
             node = expression();
-            node.setPosInSource(previous().getLine(), previous().getPos());
+            node.setPosInSource(tokens.line(previous()), tokens.pos(previous()));
             consume(TokenType.RIGHT_PAREN);
             inParens = false;
         }
@@ -345,32 +458,48 @@ public class Parser {
     }
 
     private List parseList() {
-        int start = previous().getAbsolute();
+        int start = tokens.absolute(previous());
         
         ch.uprisesoft.yali.ast.node.List list = new ch.uprisesoft.yali.ast.node.List();
-        list.token(previous());
-        list.setPosInSource(previous().getLine(), previous().getPos());
+        mark(list, previous());
 
         while (!check(TokenType.RIGHT_BRACKET) && !isAtEnd()) {
             if (match(TokenType.LEFT_BRACKET)) {
                 List nestedList = parseList();
                 list.addChild(nestedList);
-                list.token(nestedList.token());
+                if (debug) {
+                    list.token(nestedList.token());
+                }
                 continue;
             }
-            list.addChild(new SymbolWord(peek().getLexeme()));
-            list.token(peek());
+            list.addChild(new SymbolWord(tokens.lexeme(peek())));
+            if (debug) {
+                list.token(tokens.token(peek()));
+            }
             advance();
         }
         
-        int end = peek().getAbsolute()+1;
-        list.source(source.substring(start, end));
-        list.token(peek());
+        int end = tokens.absolute(peek())+1;
+        list.source(source.subSequence(start, end).toString());
+        if (debug) {
+            list.token(tokens.token(peek()));
+        }
         consume(TokenType.RIGHT_BRACKET);
         
         return list;
     }
 
+    /**
+     * Sets the position of a node, and keeps the token in debug mode
+     */
+    private void mark(Node node, int token) {
+        if (debug) {
+            node.token(tokens.token(token));
+        } else {
+            node.setPosInSource(tokens.line(token), tokens.pos(token));
+        }
+    }
+
     private boolean match(TokenType... types) {
         for (TokenType type : types) {
             if (check(type)) {
@@ -385,32 +514,47 @@ public class Parser {
         if (isAtEnd()) {
             return false;
         }
-        return peek().type() == type;
+        return tokens.type(peek()) == type;
     }
 
-    private Token advance() {
+    private int advance() {
         if (!isAtEnd()) {
             current++;
         }
         return previous();
     }
 
+    private TokenType lookahead(int distance) {
+        int index = current + distance;
+        if (!lexer.fill(index)) {
+            index = tokens.size() - 1;
+        }
+        return tokens.type(index);
+    }
+
     private boolean isAtEnd() {
-        return peek().type() == TokenType.EOF;
+        return tokens.type(peek()) == TokenType.EOF;
     }
 
-    private Token peek() {
-        return tokens.get(current);
+    /**
+     * @return the index of the current token
+     */
+    private int peek() {
+        lexer.fill(current);
+        return current;
     }
 
-    private Token previous() {
-        return tokens.get(current - 1);
+    /**
+     * @return the index of the token before the current one
+     */
+    private int previous() {
+        return current - 1;
     }
 
-    private Token consume(TokenType type) throws TokenTypeException {
+    private int consume(TokenType type) throws TokenTypeException {
         if (check(type)) {
             return advance();
         }
-        throw new TokenTypeException(type, peek().type());
+        throw new TokenTypeException(type, tokens.type(peek()));
     }
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Call;
+import ch.uprisesoft.yali.ast.node.Procedure;
+
+/**
+ * Compiled form of a procedure body or a top level statement. The code is a
+ * flat array of opcodes, each followed by its operands. Operands referring to
+ * nodes, names or call sites are indices into the constant pool.
+ *
+ * @author uprisesoft@gmail.com
+ */
+final class Bytecode {
+
+	/** PUSH k: push constant k */
+	static final int PUSH = 0;
+	/** LOAD k s: push the value of the variable named by constant k, expected in slot s or -1 */
+	static final int LOAD = 1;
+	/** CALL k n: call the procedure of call site k, resolved at runtime */
+	static final int CALL = 2;
+	/** CALL_NATIVE k n: call the native procedure of call site k */
+	static final int CALL_NATIVE = 3;
+	/** CALL_USER k n: call the user defined procedure of call site k */
+	static final int CALL_USER = 4;
+	/** JUMP t: continue at t */
+	static final int JUMP = 5;
+	/** JUMP_FALSE t: pop a boolean, continue at t if it is false */
+	static final int JUMP_FALSE = 6;
+	/** STORE: pop into the result register */
+	static final int STORE = 7;
+	/** RESULT: push the result register */
+	static final int RESULT = 8;
+	/** REPEAT: pop an integer and push it on the loop counter stack */
+	static final int REPEAT = 9;
+	/** LOOP t: count down the innermost loop, continue at t when done */
+	static final int LOOP = 10;
+	/** FAIL k: constant k is not a procedure call */
+	static final int FAIL = 11;
+	/** RETURN: leave the activation with the result register */
+	static final int RETURN = 12;
+
+	private final String name;
+	private final int[] code;
+	private final Object[] constants;
+
+	Bytecode(String name, int[] code, Object[] constants) {
+		this.name = name;
+		this.code = code;
+		this.constants = constants;
+	}
+
+	String name() {
+		return name;
+	}
+
+	int[] code() {
+		return code;
+	}
+
+	Object[] constants() {
+		return constants;
+	}
+
+	/**
+	 * A procedure call together with the definition it was resolved to at
+	 * compile time.
+	 */
+	static final class CallSite {
+
+		private final Call call;
+		private final Procedure definition;
+
+		CallSite(Call call, Procedure definition) {
+			this.call = call;
+			this.definition = definition;
+		}
+
+		Call call() {
+			return call;
+		}
+
+		Procedure definition() {
+			return definition;
+		}
+
+		@Override
+		public String toString() {
+			return call.getName();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name).append(":\n");
+		int pc = 0;
+		while (pc < code.length) {
+			sb.append(pc).append('\t');
+			switch (code[pc++]) {
+				case PUSH:
+					sb.append("PUSH ").append(constants[code[pc++]]);
+					break;
+				case LOAD:
+					sb.append("LOAD ").append(constants[code[pc++]]).append(' ').append(code[pc++]);
+					break;
+				case CALL:
+					sb.append("CALL ").append(constants[code[pc++]]).append(' ').append(code[pc++]);
+					break;
+				case CALL_NATIVE:
+					sb.append("CALL_NATIVE ").append(constants[code[pc++]]).append(' ').append(code[pc++]);
+					break;
+				case CALL_USER:
+					sb.append("CALL_USER ").append(constants[code[pc++]]).append(' ').append(code[pc++]);
+					break;
+				case JUMP:
+					sb.append("JUMP ").append(code[pc++]);
+					break;
+				case JUMP_FALSE:
+					sb.append("JUMP_FALSE ").append(code[pc++]);
+					break;
+				case STORE:
+					sb.append("STORE");
+					break;
+				case RESULT:
+					sb.append("RESULT");
+					break;
+				case REPEAT:
+					sb.append("REPEAT");
+					break;
+				case LOOP:
+					sb.append("LOOP ").append(code[pc++]);
+					break;
+				case FAIL:
+					sb.append("FAIL ").append(constants[code[pc++]]);
+					break;
+				case RETURN:
+					sb.append("RETURN");
+					break;
+				default:
+					sb.append("?");
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+}
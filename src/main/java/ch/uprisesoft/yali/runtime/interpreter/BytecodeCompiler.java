@@ -0,0 +1,282 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Call;
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import ch.uprisesoft.yali.scope.Environment;
+import ch.uprisesoft.yali.scope.Symbol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Translates procedure bodies and top level statements to bytecode. Calls are
+ * resolved against the environment at compile time, so compiled code is only
+ * valid as long as the definitions epoch of the environment does not change.
+ *
+ * Calls to the builtin if, ifelse, repeat and run with literal lists as
+ * blocks are compiled inline as jumps and loops, and reading a variable with a
+ * literal name is compiled to a single load. In a procedure body, loads of
+ * parameters and literal locals carry their slot in the procedure scope.
+ *
+ * @author uprisesoft@gmail.com
+ */
+final class BytecodeCompiler {
+
+	private static final Symbol[] NO_SLOTS = new Symbol[0];
+
+	private final Interpreter interpreter;
+
+	private Procedure thing;
+	private Procedure ifexpr;
+	private Procedure ifelseexpr;
+	private Procedure repeat;
+	private Procedure run;
+
+	BytecodeCompiler(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	/**
+	 * Remembers the builtin control structures. Only calls resolving to exactly
+	 * these definitions are inlined, redefined ones are called as usual.
+	 */
+	void builtins(Environment env) {
+		thing = Inlining.resolve(env, Symbol.of("thing"));
+		ifexpr = Inlining.resolve(env, Symbol.of("if"));
+		ifelseexpr = Inlining.resolve(env, Symbol.of("ifelse"));
+		repeat = Inlining.resolve(env, Symbol.of("repeat"));
+		run = Inlining.resolve(env, Symbol.of("run"));
+	}
+
+	Bytecode procedure(Procedure definition) {
+		Emitter e = new Emitter(definition.getSlots());
+		for (Node statement : definition.getChildren()) {
+			statement(e, statement);
+		}
+		e.op(Bytecode.RETURN);
+		return e.build(definition.getName());
+	}
+
+	Bytecode statement(Call call) {
+		Emitter e = new Emitter(NO_SLOTS);
+		statement(e, call);
+		e.op(Bytecode.RETURN);
+		return e.build(call.getName());
+	}
+
+	private void statement(Emitter e, Node node) {
+		if (!node.type().equals(NodeType.PROCCALL)) {
+			e.op(Bytecode.FAIL, e.constant(node));
+			return;
+		}
+		expression(e, node);
+		e.op(Bytecode.STORE);
+	}
+
+	private void expression(Emitter e, Node node) {
+		if (!node.type().equals(NodeType.PROCCALL)) {
+			e.op(Bytecode.PUSH, e.constant(node));
+			return;
+		}
+
+		Call call = node.toProcedureCall();
+		Procedure definition = Inlining.resolve(interpreter.env(), call.symbol());
+
+		if (definition != null && inline(e, call, definition)) {
+			return;
+		}
+
+		for (Node arg : call.getChildren()) {
+			expression(e, arg);
+		}
+
+		int op;
+		if (definition == null) {
+			op = Bytecode.CALL;
+		} else if (definition.isNative()) {
+			op = Bytecode.CALL_NATIVE;
+		} else {
+			op = Bytecode.CALL_USER;
+		}
+		e.op(op, e.constant(new Bytecode.CallSite(call, definition)), call.getChildren().size());
+	}
+
+	private boolean inline(Emitter e, Call call, Procedure definition) {
+		List<Node> args = call.getChildren();
+
+		if (definition == thing && args.size() == 1) {
+			Node name = args.get(0);
+			if (name.type().equals(NodeType.SYMBOL)) {
+				load(e, name.toSymbolWord().symbol());
+				return true;
+			}
+			if (name.type().equals(NodeType.QUOTE)) {
+				load(e, name.toQuotedWord().symbol());
+				return true;
+			}
+			return false;
+		}
+
+		if (definition == run && args.size() == 1) {
+			Node block = Inlining.block(interpreter, args.get(0));
+			if (block == null) {
+				return false;
+			}
+			block(e, block);
+			e.op(Bytecode.RESULT);
+			return true;
+		}
+
+		if (definition == ifexpr && args.size() == 2) {
+			Node iftrue = Inlining.block(interpreter, args.get(1));
+			if (iftrue == null) {
+				return false;
+			}
+			expression(e, args.get(0));
+			int otherwise = e.jump(Bytecode.JUMP_FALSE);
+			block(e, iftrue);
+			int end = e.jump(Bytecode.JUMP);
+			e.label(otherwise);
+			nil(e);
+			e.label(end);
+			e.op(Bytecode.RESULT);
+			return true;
+		}
+
+		if (definition == ifelseexpr && args.size() == 3) {
+			Node iftrue = Inlining.block(interpreter, args.get(1));
+			Node iffalse = Inlining.block(interpreter, args.get(2));
+			if (iftrue == null || iffalse == null) {
+				return false;
+			}
+			expression(e, args.get(0));
+			int otherwise = e.jump(Bytecode.JUMP_FALSE);
+			block(e, iftrue);
+			int end = e.jump(Bytecode.JUMP);
+			e.label(otherwise);
+			block(e, iffalse);
+			e.label(end);
+			e.op(Bytecode.RESULT);
+			return true;
+		}
+
+		if (definition == repeat && args.size() == 2) {
+			Node block = Inlining.block(interpreter, args.get(1));
+			if (block == null) {
+				return false;
+			}
+			expression(e, args.get(0));
+			e.op(Bytecode.REPEAT);
+			nil(e);
+			int loop = e.position();
+			int end = e.jump(Bytecode.LOOP);
+			for (Node statement : block.getChildren()) {
+				statement(e, statement);
+			}
+			e.op(Bytecode.JUMP, loop);
+			e.label(end);
+			e.op(Bytecode.RESULT);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Compiles the calls of a block. An empty block results in nil.
+	 */
+	private void block(Emitter e, Node block) {
+		if (block.getChildren().isEmpty()) {
+			nil(e);
+		}
+		for (Node statement : block.getChildren()) {
+			statement(e, statement);
+		}
+	}
+
+	private void load(Emitter e, Symbol name) {
+		e.op(Bytecode.LOAD, e.constant(name), e.slot(name));
+	}
+
+	private void nil(Emitter e) {
+		e.op(Bytecode.PUSH, e.constant(Node.nil()));
+		e.op(Bytecode.STORE);
+	}
+
+	private static final class Emitter {
+
+		private int[] code = new int[16];
+		private int size = 0;
+		private final List<Object> constants = new ArrayList<>();
+		private final Symbol[] slots;
+
+		Emitter(Symbol[] slots) {
+			this.slots = slots;
+		}
+
+		int constant(Object constant) {
+			constants.add(constant);
+			return constants.size() - 1;
+		}
+
+		/**
+		 * The slot of a name in the scope the code runs in, or -1
+		 */
+		int slot(Symbol name) {
+			for (int i = 0; i < slots.length; i++) {
+				if (slots[i] == name) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void op(int... ops) {
+			if (size + ops.length > code.length) {
+				code = Arrays.copyOf(code, Math.max(code.length * 2, size + ops.length));
+			}
+			for (int op : ops) {
+				code[size++] = op;
+			}
+		}
+
+		int position() {
+			return size;
+		}
+
+		/**
+		 * Emits a jump with an open target and returns the position of the
+		 * target operand, to be closed with label().
+		 */
+		int jump(int op) {
+			op(op, -1);
+			return size - 1;
+		}
+
+		void label(int operand) {
+			code[operand] = size;
+		}
+
+		Bytecode build(String name) {
+			return new Bytecode(name, Arrays.copyOf(code, size), constants.toArray());
+		}
+	}
+}
@@ -0,0 +1,632 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.*;
+import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.parser.Parser;
+import ch.uprisesoft.yali.runtime.io.InputGenerator;
+import ch.uprisesoft.yali.runtime.io.OutputObserver;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Arithmetic;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Control;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Data;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Dictionaries;
+import ch.uprisesoft.yali.runtime.procedures.builtin.IO;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Logic;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Template;
+import ch.uprisesoft.yali.scope.Environment;
+import ch.uprisesoft.yali.scope.Scope;
+import ch.uprisesoft.yali.scope.Symbol;
+import ch.uprisesoft.yali.scope.VariableNotFoundException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An interpreter which compiles procedure bodies and top level statements to
+ * bytecode and runs them on a stack machine. Behaves like the
+ * UnthreadedInterpreter, tick() executes one instruction, so evaluation can be
+ * paused and resumed at the same points.
+ *
+ * Compiled procedures are cached until the definitions epoch of the
+ * environment changes. Native procedures are called with their evaluated
+ * arguments, if they schedule calls and return nothing, the scheduled calls
+ * are compiled and run before the native procedure is called again.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class BytecodeInterpreter implements Interpreter {
+
+	private final List<Tracer> tracers = new ArrayList<>();
+	private Tracer tracer = NoTracer.INSTANCE;
+
+	private final Environment env;
+	private final BytecodeCompiler compiler = new BytecodeCompiler(this);
+	private boolean paused = false;
+
+	private final ArrayDeque<Call> program = new ArrayDeque<>();
+
+	private Activation[] activations = new Activation[16];
+	private int depth = 0;
+
+	private Node[] values = new Node[32];
+	private int sp = 0;
+
+	private int[] counters = new int[8];
+	private int loops = 0;
+
+	private final Map<Procedure, Bytecode> compiled = new IdentityHashMap<>();
+	private long compiledEpoch = -1;
+
+	// The native procedure currently called and the calls it scheduled
+	private Call nativeCall;
+	private Procedure nativeDefinition;
+	private Frame nativeFrame;
+	private final List<Call> scheduled = new ArrayList<>();
+
+	private Node lastResult;
+
+	public BytecodeInterpreter() {
+		this(new Environment());
+	}
+
+	/**
+	 * Creates an interpreter on the given environment, e.g. a
+	 * ShallowEnvironment. The environment must not contain any scopes yet.
+	 *
+	 * @param env an empty environment
+	 */
+	public BytecodeInterpreter(Environment env) {
+		this(env, new Scope("global"));
+	}
+
+	private BytecodeInterpreter(Environment env, Scope global) {
+		this.env = env;
+		env.push(global);
+	}
+
+	@Override
+	public void addTracer(Tracer tracer) {
+		tracers.add(tracer);
+		this.tracer = CompositeTracer.of(tracers);
+		env.addTracer(tracer);
+	}
+
+	@Override
+	public List<Tracer> tracers() {
+		return tracers;
+	}
+
+	@Override
+	public Node lastResult() {
+		return lastResult;
+	}
+
+	@Override
+	public boolean finished() {
+		return depth == 0 && program.isEmpty();
+	}
+
+	@Override
+	public Node run(Node node) {
+		tracer.run(node);
+
+		if (!node.type().equals(NodeType.LIST)) {
+			throw new NodeTypeException(node, node.type(), NodeType.LIST);
+		}
+
+		for (Node n : node.getChildren()) {
+			program.add(n.toProcedureCall());
+		}
+
+		return run();
+	}
+
+	@Override
+	public Node run(Call call) {
+		tracer.run(call);
+
+		load(call);
+
+		return run();
+	}
+
+	@Override
+	public Node run() {
+		execute(Long.MAX_VALUE);
+		return lastResult;
+	}
+
+	@Override
+	public void reset() {
+		program.clear();
+		while (depth > 0) {
+			if (activations[--depth].scoped) {
+				env.pop();
+			}
+			activations[depth] = null;
+		}
+		Arrays.fill(values, 0, sp, null);
+		sp = 0;
+		loops = 0;
+		nativeCall = null;
+		nativeDefinition = null;
+		nativeFrame = null;
+		scheduled.clear();
+	}
+
+	@Override
+	public void load(Node node) {
+		tracer.load(node);
+
+		switch (node.type()) {
+			case LIST:
+				for (Node n : node.getChildren()) {
+					program.add(n.toProcedureCall());
+				}
+				break;
+			case PROCCALL:
+				Call call = node.toProcedureCall();
+				enter(compiler.statement(call), call, null, false);
+				break;
+			default:
+				lastResult = node;
+				break;
+		}
+	}
+
+	@Override
+	public Node resume() {
+		tracer.resume(depth == 0 ? null : activations[depth - 1].call);
+		paused = false;
+
+		execute(Long.MAX_VALUE);
+
+		return lastResult;
+	}
+
+	@Override
+	public void pause() {
+		Call current = nativeCall != null || depth == 0 ? nativeCall : activations[depth - 1].call;
+		tracer.pause(current);
+		paused = true;
+	}
+
+	@Override
+	public boolean paused() {
+		return paused;
+	}
+
+	@Override
+	public Node read(String source) {
+		return new Parser(this).read(source);
+	}
+
+	@Override
+	public Node read(ch.uprisesoft.yali.ast.node.List list) {
+		Node parsed = list.parsed(env, env.epoch());
+
+		if (parsed == null) {
+			parsed = new Parser(this).read(list);
+			list.parsed(parsed, env, env.epoch());
+		}
+
+		return parsed;
+	}
+
+	@Override
+	public Environment env() {
+		return env;
+	}
+
+	@Override
+	public void output(Node node) {
+		lastResult = node;
+	}
+
+	/**
+	 * Only native procedures have a frame, it lives until they return a
+	 * result.
+	 *
+	 * @return the frame of the native procedure currently called, or null
+	 */
+	@Override
+	public Frame frame() {
+		if (nativeFrame == null && nativeCall != null) {
+			nativeFrame = new Frame(nativeCall, nativeDefinition);
+		}
+		return nativeFrame;
+	}
+
+	@Override
+	public boolean tick() {
+		return execute(1);
+	}
+
+	/**
+	 * The dispatch loop. Executes up to the given number of instructions. If
+	 * no activation is left, the next top level statement of the program is
+	 * compiled and entered.
+	 *
+	 * @return true if there is more to do, false if the program is finished
+	 * or the interpreter is paused
+	 */
+	private boolean execute(long steps) {
+		for (; steps > 0; steps--) {
+			if (paused) {
+				return false;
+			}
+
+			if (depth == 0) {
+				if (program.isEmpty()) {
+					return false;
+				}
+				Call next = program.poll();
+				enter(compiler.statement(next), next, null, false);
+				continue;
+			}
+
+			Activation act = activations[depth - 1];
+
+			tracer.tick(act.call);
+
+			// A native procedure waiting for its scheduled calls
+			if (act.code == null) {
+				callNative(act.call, act.definition, act.args, act);
+				continue;
+			}
+
+			int[] code = act.code;
+			Object[] constants = act.constants;
+
+			switch (code[act.pc++]) {
+				case Bytecode.PUSH:
+					push((Node) constants[code[act.pc++]]);
+					break;
+				case Bytecode.LOAD: {
+					Symbol name = (Symbol) constants[code[act.pc++]];
+					int slot = code[act.pc++];
+					if (slot >= 0) {
+						if (!env.thingable(name, slot)) {
+							throw new VariableNotFoundException(name.name());
+						}
+						push(env.thing(name, slot));
+						break;
+					}
+					if (!env.thingable(name)) {
+						throw new VariableNotFoundException(name.name());
+					}
+					push(env.thing(name));
+					break;
+				}
+				case Bytecode.CALL: {
+					Bytecode.CallSite site = (Bytecode.CallSite) constants[code[act.pc++]];
+					int argc = code[act.pc++];
+					Procedure definition = env.procedure(site.call());
+					if (definition.isNative()) {
+						callNative(site.call(), definition, args(argc), null);
+					} else {
+						callUser(site.call(), definition, args(argc));
+					}
+					break;
+				}
+				case Bytecode.CALL_NATIVE: {
+					Bytecode.CallSite site = (Bytecode.CallSite) constants[code[act.pc++]];
+					int argc = code[act.pc++];
+					callNative(site.call(), site.definition(), args(argc), null);
+					break;
+				}
+				case Bytecode.CALL_USER: {
+					Bytecode.CallSite site = (Bytecode.CallSite) constants[code[act.pc++]];
+					int argc = code[act.pc++];
+					callUser(site.call(), site.definition(), args(argc));
+					break;
+				}
+				case Bytecode.JUMP:
+					act.pc = code[act.pc];
+					break;
+				case Bytecode.JUMP_FALSE: {
+					Node condition = pop();
+					if (!condition.type().equals(NodeType.BOOLEAN)) {
+						throw new NodeTypeException(condition, condition.type(), NodeType.BOOLEAN);
+					}
+					if (condition.toBooleanWord().getBoolean()) {
+						act.pc++;
+					} else {
+						act.pc = code[act.pc];
+					}
+					break;
+				}
+				case Bytecode.STORE:
+					act.result = pop();
+					lastResult = act.result;
+					break;
+				case Bytecode.RESULT:
+					push(act.result);
+					break;
+				case Bytecode.REPEAT: {
+					Node control = pop();
+					if (!control.type().equals(NodeType.INTEGER)) {
+						throw new NodeTypeException(control, control.type(), NodeType.INTEGER);
+					}
+					if (loops == counters.length) {
+						counters = Arrays.copyOf(counters, loops * 2);
+					}
+					counters[loops++] = control.toIntegerWord().getInteger();
+					break;
+				}
+				case Bytecode.LOOP:
+					if (counters[loops - 1] > 0) {
+						counters[loops - 1]--;
+						act.pc++;
+					} else {
+						loops--;
+						act.pc = code[act.pc];
+					}
+					break;
+				case Bytecode.FAIL: {
+					Node node = (Node) constants[code[act.pc++]];
+					throw new NodeTypeException(node, node.type(), NodeType.PROCCALL);
+				}
+				case Bytecode.RETURN:
+					leave();
+					break;
+				default:
+					throw new IllegalStateException("Unknown opcode in " + act.name);
+			}
+		}
+
+		return !finished();
+	}
+
+	private void callNative(Call call, Procedure definition, List<Node> args, Activation waiting) {
+		nativeCall = call;
+		nativeDefinition = definition;
+		nativeFrame = waiting == null ? null : waiting.frame;
+		scheduled.clear();
+
+		tracer.callPrimitive(call.getName(), args, env);
+
+		// The native procedure returns a result if it's done, or nothing if it
+		// scheduled more calls and wants to be called again after they are
+		// evaluated.
+		Optional<Node> result = definition.getSimpleNativeCall().apply(this, args);
+
+		Frame frame = nativeFrame;
+		nativeCall = null;
+		nativeDefinition = null;
+		nativeFrame = null;
+
+		if (result.isPresent()) {
+			if (waiting != null) {
+				activations[--depth] = null;
+			}
+			lastResult = result.get();
+			push(lastResult);
+			return;
+		}
+
+		if (waiting == null) {
+			waiting = new Activation(null, call, definition, false);
+			waiting.args = args;
+			push(waiting);
+		}
+		waiting.frame = frame;
+
+		for (Call c : scheduled) {
+			enter(compiler.statement(c), c, null, false);
+		}
+		scheduled.clear();
+	}
+
+	private void callUser(Call call, Procedure definition, List<Node> args) {
+		String name = call.symbol().name();
+
+		tracer.schedule(name, call, env);
+
+		boolean scoped = !definition.isMacro();
+		if (scoped) {
+			env.push(name, definition.getSlots());
+			tracer.scope(name, env);
+		}
+
+		Symbol[] params = definition.getArgSymbols();
+		for (int i = 0; i < params.length; i++) {
+			env.bind(params[i], i, args.get(i));
+		}
+
+		tracer.call(name, args, env);
+
+		enter(compiled(definition), call, definition, scoped);
+	}
+
+	private void enter(Bytecode code, Call call, Procedure definition, boolean scoped) {
+		Activation act = new Activation(code, call, definition, scoped);
+		act.result = lastResult;
+		push(act);
+	}
+
+	/**
+	 * Leaves the current activation. The result goes to the operand stack if
+	 * the activation was called from compiled code, otherwise it only becomes
+	 * the last result, e.g. for a native procedure waiting for it.
+	 */
+	private void leave() {
+		Activation act = activations[--depth];
+		activations[depth] = null;
+
+		if (act.scoped) {
+			tracer.unscope(env.peek().name(), env);
+			env.pop();
+		}
+		if (act.definition != null) {
+			tracer.unschedule(act.call.getName(), act.call, env);
+		}
+
+		lastResult = act.result;
+
+		if (depth > 0 && activations[depth - 1].code != null) {
+			push(lastResult);
+		}
+	}
+
+	private Bytecode compiled(Procedure definition) {
+		if (compiledEpoch != env.epoch()) {
+			compiled.clear();
+			compiledEpoch = env.epoch();
+		}
+
+		Bytecode code = compiled.get(definition);
+		if (code == null) {
+			code = compiler.procedure(definition);
+			compiled.put(definition, code);
+		}
+		return code;
+	}
+
+	@Override
+	public void schedule(Call call) {
+		if (nativeCall != null) {
+			scheduled.add(call);
+		} else {
+			enter(compiler.statement(call), call, null, false);
+		}
+	}
+
+	private void push(Activation act) {
+		if (depth == activations.length) {
+			activations = Arrays.copyOf(activations, depth * 2);
+		}
+		activations[depth++] = act;
+	}
+
+	private void push(Node value) {
+		if (sp == values.length) {
+			values = Arrays.copyOf(values, sp * 2);
+		}
+		values[sp++] = value;
+	}
+
+	private Node pop() {
+		Node value = values[--sp];
+		values[sp] = null;
+		return value;
+	}
+
+	private List<Node> args(int argc) {
+		List<Node> args = new ArrayList<>(argc);
+		for (int i = sp - argc; i < sp; i++) {
+			args.add(values[i]);
+			values[i] = null;
+		}
+		sp -= argc;
+		return args;
+	}
+
+	@Override
+	public Interpreter loadStdLib() {
+
+		Logic logic = new Logic();
+		logic.registerProcedures(this);
+
+		Control control = new Control();
+		control.registerProcedures(this);
+
+		Arithmetic arithmetic = new Arithmetic();
+		arithmetic.registerProcedures(this);
+
+		Template template = new Template();
+		template.registerProcedures(this);
+
+		Data data = new Data();
+		data.registerProcedures(this);
+
+		Dictionaries dictionaries = new Dictionaries();
+		dictionaries.registerProcedures(this);
+
+		compiler.builtins(env);
+
+		return this;
+	}
+
+	@Override
+	public BytecodeInterpreter fork() {
+		BytecodeInterpreter fork = new BytecodeInterpreter(env.create(), env.first());
+		fork.compiler.builtins(fork.env);
+		return fork;
+	}
+
+	@Override
+	public Interpreter loadStdLib(OutputObserver oo, InputGenerator ig) {
+		IO io = new IO();
+		io.register(oo);
+		io.register(ig);
+		io.registerProcedures(this);
+
+		return loadStdLib();
+	}
+
+	@Override
+	public java.util.List<String> stringify(java.util.List<Node> args) {
+		java.util.List<String> stringifiedArgs = new ArrayList<>();
+		for (Node arg : args) {
+			if (arg.type().equals(NodeType.LIST)) {
+				stringifiedArgs.addAll(stringify(arg.getChildren()));
+			} else {
+				stringifiedArgs.add(arg.toString());
+			}
+		}
+		return stringifiedArgs;
+	}
+
+	@Override
+	public void inform(String output) {
+	}
+
+	/**
+	 * An activation of compiled code, or a native procedure waiting for the
+	 * calls it scheduled.
+	 */
+	private static final class Activation {
+
+		private final String name;
+		private final int[] code;
+		private final Object[] constants;
+		private final Call call;
+		private final Procedure definition;
+		private final boolean scoped;
+
+		private int pc = 0;
+		private Node result;
+
+		private List<Node> args;
+		private Frame frame;
+
+		private Activation(Bytecode code, Call call, Procedure definition, boolean scoped) {
+			this.name = code == null ? call.getName() : code.name();
+			this.code = code == null ? null : code.code();
+			this.constants = code == null ? null : code.constants();
+			this.call = call;
+			this.definition = definition;
+			this.scoped = scoped;
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Call;
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.scope.Environment;
+import ch.uprisesoft.yali.scope.Symbol;
+import ch.uprisesoft.yali.scope.VariableNotFoundException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translates call trees to trees of closures, one per node, with procedure
+ * definitions resolved at compile time. Evaluating a closure is a plain
+ * recursive call chain on the Java stack, so a compiled statement can not be
+ * paused. Use pauses() to find out if a statement may reach pause.
+ *
+ * Calls to the builtin if, ifelse, repeat and run with literal lists as
+ * blocks are compiled to closures directly, other control structures are
+ * called as native procedures. In a procedure body, reading a parameter or a
+ * literal local reads its slot in the procedure scope.
+ *
+ * @author uprisesoft@gmail.com
+ */
+final class ClosureCompiler {
+
+	/**
+	 * A compiled node
+	 */
+	@FunctionalInterface
+	interface Closure {
+
+		Node eval();
+	}
+
+	private static final Closure NIL = Node::nil;
+	private static final Symbol PAUSE = Symbol.of("pause");
+	private static final Symbol[] NO_SLOTS = new Symbol[0];
+
+	private final UnthreadedInterpreter interpreter;
+
+	private final Map<Procedure, Closure> bodies = new IdentityHashMap<>();
+	private final Map<Procedure, Boolean> pausing = new IdentityHashMap<>();
+	private long epoch = -1;
+
+	private Procedure thing;
+	private Procedure ifexpr;
+	private Procedure ifelseexpr;
+	private Procedure repeat;
+	private Procedure run;
+
+	ClosureCompiler(UnthreadedInterpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	/**
+	 * Remembers the builtin control structures. Only calls resolving to exactly
+	 * these definitions are compiled to closures, redefined ones are called as
+	 * usual.
+	 */
+	void builtins(Environment env) {
+		thing = Inlining.resolve(env, Symbol.of("thing"));
+		ifexpr = Inlining.resolve(env, Symbol.of("if"));
+		ifelseexpr = Inlining.resolve(env, Symbol.of("ifelse"));
+		repeat = Inlining.resolve(env, Symbol.of("repeat"));
+		run = Inlining.resolve(env, Symbol.of("run"));
+	}
+
+	/**
+	 * The compiled body of a procedure, cached until the definitions epoch of
+	 * the environment changes.
+	 */
+	Closure body(Procedure definition) {
+		validate();
+
+		Closure body = bodies.get(definition);
+		if (body == null) {
+			body = statements(definition.getChildren(), definition.getSlots());
+			bodies.put(definition, body);
+		}
+		return body;
+	}
+
+	Closure statement(Call call) {
+		return expression(call, NO_SLOTS);
+	}
+
+	/**
+	 * Checks if evaluating a node may call pause, either directly, in a
+	 * literal list or in the body of a user defined procedure. Lists built at
+	 * runtime can not be checked.
+	 */
+	boolean pauses(Node node) {
+		validate();
+		return pauses(node, new HashSet<>());
+	}
+
+	private boolean pauses(Node node, Set<Procedure> seen) {
+		switch (node.type()) {
+			case PROCCALL:
+				if (pauses(node.toProcedureCall().symbol(), seen)) {
+					return true;
+				}
+				break;
+			case SYMBOL:
+				return pauses(node.toSymbolWord().symbol(), seen);
+			case LIST:
+				break;
+			default:
+				return false;
+		}
+
+		for (Node child : node.getChildren()) {
+			if (pauses(child, seen)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean pauses(Symbol name, Set<Procedure> seen) {
+		if (name == PAUSE) {
+			return true;
+		}
+
+		Procedure definition = Inlining.resolve(interpreter.env(), name);
+		if (definition == null || definition.isNative() || !seen.add(definition)) {
+			return false;
+		}
+
+		Boolean known = pausing.get(definition);
+		if (known == null) {
+			known = false;
+			for (Node statement : definition.getChildren()) {
+				if (pauses(statement, seen)) {
+					known = true;
+					break;
+				}
+			}
+			pausing.put(definition, known);
+		}
+		return known;
+	}
+
+	private Closure statements(List<Node> statements, Symbol[] slots) {
+		if (statements.isEmpty()) {
+			return NIL;
+		}
+
+		Closure[] closures = new Closure[statements.size()];
+		for (int i = 0; i < closures.length; i++) {
+			Node statement = statements.get(i);
+			if (statement.type().equals(NodeType.PROCCALL)) {
+				closures[i] = expression(statement, slots);
+			} else {
+				closures[i] = () -> {
+					throw new NodeTypeException(statement, statement.type(), NodeType.PROCCALL);
+				};
+			}
+		}
+
+		if (closures.length == 1) {
+			return closures[0];
+		}
+
+		return () -> {
+			Node result = null;
+			for (Closure c : closures) {
+				result = c.eval();
+			}
+			return result;
+		};
+	}
+
+	private Closure expression(Node node, Symbol[] slots) {
+		if (!node.type().equals(NodeType.PROCCALL)) {
+			return () -> node;
+		}
+
+		Call call = node.toProcedureCall();
+		Procedure definition = Inlining.resolve(interpreter.env(), call.symbol());
+
+		if (definition != null) {
+			Closure inlined = inline(call, definition, slots);
+			if (inlined != null) {
+				return inlined;
+			}
+		}
+
+		Closure[] args = new Closure[call.getChildren().size()];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = expression(call.getChildren().get(i), slots);
+		}
+
+		if (definition == null) {
+			return () -> interpreter.invoke(call, interpreter.env().procedure(call), eval(args));
+		}
+
+		return () -> interpreter.invoke(call, definition, eval(args));
+	}
+
+	private Closure inline(Call call, Procedure definition, Symbol[] slots) {
+		List<Node> args = call.getChildren();
+
+		if (definition == thing && args.size() == 1) {
+			final Symbol name;
+			if (args.get(0).type().equals(NodeType.SYMBOL)) {
+				name = args.get(0).toSymbolWord().symbol();
+			} else if (args.get(0).type().equals(NodeType.QUOTE)) {
+				name = args.get(0).toQuotedWord().symbol();
+			} else {
+				return null;
+			}
+			Environment env = interpreter.env();
+			int slot = slot(slots, name);
+			if (slot >= 0) {
+				return () -> {
+					if (!env.thingable(name, slot)) {
+						throw new VariableNotFoundException(name.name());
+					}
+					return env.thing(name, slot);
+				};
+			}
+			return () -> {
+				if (!env.thingable(name)) {
+					throw new VariableNotFoundException(name.name());
+				}
+				return env.thing(name);
+			};
+		}
+
+		if (definition == run && args.size() == 1) {
+			return block(args.get(0), slots);
+		}
+
+		if (definition == ifexpr && args.size() == 2) {
+			Closure iftrue = block(args.get(1), slots);
+			if (iftrue == null) {
+				return null;
+			}
+			Closure condition = expression(args.get(0), slots);
+			return () -> bool(condition.eval()) ? iftrue.eval() : Node.nil();
+		}
+
+		if (definition == ifelseexpr && args.size() == 3) {
+			Closure iftrue = block(args.get(1), slots);
+			Closure iffalse = block(args.get(2), slots);
+			if (iftrue == null || iffalse == null) {
+				return null;
+			}
+			Closure condition = expression(args.get(0), slots);
+			return () -> bool(condition.eval()) ? iftrue.eval() : iffalse.eval();
+		}
+
+		if (definition == repeat && args.size() == 2) {
+			Closure block = block(args.get(1), slots);
+			if (block == null) {
+				return null;
+			}
+			Closure control = expression(args.get(0), slots);
+			return () -> {
+				Node times = control.eval();
+				if (!times.type().equals(NodeType.INTEGER)) {
+					throw new NodeTypeException(times, times.type(), NodeType.INTEGER);
+				}
+				Node result = Node.nil();
+				for (int i = times.toIntegerWord().getInteger(); i > 0; i--) {
+					result = block.eval();
+				}
+				return result;
+			};
+		}
+
+		return null;
+	}
+
+	/**
+	 * Compiles a literal list. Returns null if the list can not be compiled,
+	 * in that case it is run by the builtin and fails the same way it would
+	 * without compilation.
+	 */
+	private Closure block(Node arg, Symbol[] slots) {
+		Node program = Inlining.block(interpreter, arg);
+		if (program == null) {
+			return null;
+		}
+
+		return statements(program.getChildren(), slots);
+	}
+
+	private static int slot(Symbol[] slots, Symbol name) {
+		for (int i = 0; i < slots.length; i++) {
+			if (slots[i] == name) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean bool(Node condition) {
+		if (!condition.type().equals(NodeType.BOOLEAN)) {
+			throw new NodeTypeException(condition, condition.type(), NodeType.BOOLEAN);
+		}
+		return condition.toBooleanWord().getBoolean();
+	}
+
+	private static List<Node> eval(Closure[] args) {
+		List<Node> values = new ArrayList<>(args.length);
+		for (Closure arg : args) {
+			values.add(arg.eval());
+		}
+		return values;
+	}
+
+	private void validate() {
+		long current = interpreter.env().epoch();
+		if (current != epoch) {
+			bodies.clear();
+			pausing.clear();
+			epoch = current;
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Call;
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.scope.Environment;
+import java.util.List;
+
+/**
+ * Dispatches events to several Tracers. Each Tracer only gets the events it
+ * subscribed to with Tracer.events().
+ *
+ * @author uprisesoft@gmail.com
+ */
+public final class CompositeTracer implements Tracer {
+
+    private final Tracer[][] subscribers = new Tracer[Event.values().length][];
+
+    private CompositeTracer(List<Tracer> tracers) {
+        for (Event event : Event.values()) {
+            subscribers[event.ordinal()] = tracers.stream()
+                    .filter(t -> t.events().contains(event))
+                    .toArray(Tracer[]::new);
+        }
+    }
+
+    /**
+     * The single Tracer to call for a list of Tracers
+     *
+     * @param tracers the registered Tracers
+     * @return a NoTracer if the list is empty, the Tracer itself if there is
+     * only one which wants all events, a CompositeTracer otherwise
+     */
+    public static Tracer of(List<Tracer> tracers) {
+        if (tracers.isEmpty()) {
+            return NoTracer.INSTANCE;
+        }
+        if (tracers.size() == 1 && tracers.get(0).events().size() == Event.values().length) {
+            return tracers.get(0);
+        }
+        return new CompositeTracer(tracers);
+    }
+
+    private Tracer[] subscribers(Event event) {
+        return subscribers[event.ordinal()];
+    }
+
+    @Override
+    public void callPrimitive(String name, List<Node> args, Environment env) {
+        for (Tracer t : subscribers(Event.CALL_PRIMITIVE)) {
+            t.callPrimitive(name, args, env);
+        }
+    }
+
+    @Override
+    public void call(String name, List<Node> args, Environment env) {
+        for (Tracer t : subscribers(Event.CALL)) {
+            t.call(name, args, env);
+        }
+    }
+
+    @Override
+    public void schedule(String name, Call call, Environment env) {
+        for (Tracer t : subscribers(Event.SCHEDULE)) {
+            t.schedule(name, call, env);
+        }
+    }
+
+    @Override
+    public void unschedule(String name, Call call, Environment env) {
+        for (Tracer t : subscribers(Event.UNSCHEDULE)) {
+            t.unschedule(name, call, env);
+        }
+    }
+
+    @Override
+    public void arg(String name, Node val, Environment env) {
+        for (Tracer t : subscribers(Event.ARG)) {
+            t.arg(name, val, env);
+        }
+    }
+
+    @Override
+    public void make(String name, Node val, Environment env) {
+        for (Tracer t : subscribers(Event.MAKE)) {
+            t.make(name, val, env);
+        }
+    }
+
+    @Override
+    public void thing(String name, Node val, Environment env) {
+        for (Tracer t : subscribers(Event.THING)) {
+            t.thing(name, val, env);
+        }
+    }
+
+    @Override
+    public void local(String name, Environment env) {
+        for (Tracer t : subscribers(Event.LOCAL)) {
+            t.local(name, env);
+        }
+    }
+
+    @Override
+    public void scope(String name, Environment env) {
+        for (Tracer t : subscribers(Event.SCOPE)) {
+            t.scope(name, env);
+        }
+    }
+
+    @Override
+    public void unscope(String name, Environment env) {
+        for (Tracer t : subscribers(Event.UNSCOPE)) {
+            t.unscope(name, env);
+        }
+    }
+
+    @Override
+    public void run(Node val) {
+        for (Tracer t : subscribers(Event.RUN)) {
+            t.run(val);
+        }
+    }
+
+    @Override
+    public void load(Node val) {
+        for (Tracer t : subscribers(Event.LOAD)) {
+            t.load(val);
+        }
+    }
+
+    @Override
+    public void tick(Node val) {
+        for (Tracer t : subscribers(Event.TICK)) {
+            t.tick(val);
+        }
+    }
+
+    @Override
+    public void pause(Node val) {
+        for (Tracer t : subscribers(Event.PAUSE)) {
+            t.pause(val);
+        }
+    }
+
+    @Override
+    public void resume(Node val) {
+        for (Tracer t : subscribers(Event.RESUME)) {
+            t.resume(val);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Call;
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An activation record of a procedure call. The parsed Call only describes what
+ * is called with which argument expressions, everything that changes while the
+ * call is evaluated lives here. This way one syntax tree can be on the stack
+ * several times (recursion) or be run by several interpreters at once.
+ *
+ * Native procedures which need more than one step (e.g. control structures)
+ * can keep their own state in the frame, see state().
+ *
+ * Frames are reused by the interpreter once the call is finished, so neither
+ * the frame nor its argument list must be kept beyond the call.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class Frame {
+
+    private Call call;
+    private Procedure definition;
+    private final List<Node> args = new ArrayList<>();
+    private int callPos = 0;
+    private boolean bound = false;
+    private boolean evaluated = false;
+    private boolean tail = false;
+    private Node result;
+    private Object state;
+
+    public Frame(Call call, Procedure definition) {
+        this.call = call;
+        this.definition = definition;
+    }
+
+    /**
+     * Prepares a finished frame for another call
+     */
+    void reset(Call call, Procedure definition) {
+        this.call = call;
+        this.definition = definition;
+        args.clear();
+        callPos = 0;
+        bound = false;
+        evaluated = false;
+        tail = false;
+        result = null;
+        state = null;
+    }
+
+    public Call call() {
+        return call;
+    }
+
+    public Procedure definition() {
+        return definition;
+    }
+
+    public String getName() {
+        return call.getName();
+    }
+
+    public void arg(Node arg) {
+        this.args.add(arg);
+    }
+
+    public List<Node> args() {
+        return args;
+    }
+
+    /**
+     * Checks if all arguments are evaluated
+     *
+     * @return true if there are arguments left to evaluate, false otherwise
+     */
+    public boolean hasMoreParameters() {
+        return args.size() < call.getChildren().size();
+    }
+
+    public Node nextParameter() {
+        return call.getChildren().get(args.size());
+    }
+
+    public boolean hasMoreCalls() {
+        return callPos < definition.getChildren().size();
+    }
+
+    public Call nextCall() {
+        return definition.getChildren().get(callPos++).toProcedureCall();
+    }
+
+    /**
+     * Used to check if the arguments are already bound to their names in the
+     * environment.
+     *
+     * @return true if the arguments are bound, false otherwise
+     */
+    public boolean bound() {
+        return bound;
+    }
+
+    public void bound(boolean bound) {
+        this.bound = bound;
+    }
+
+    public void evaluated(boolean e) {
+        this.evaluated = e;
+    }
+
+    public boolean evaluated() {
+        return evaluated;
+    }
+
+    /**
+     * Marks that nothing is left to do after the call scheduled last: its
+     * result is the result of this frame. The interpreter may then drop this
+     * frame before that call is evaluated (tail call).
+     *
+     * @param tail true if the call scheduled last is a tail call
+     */
+    public void tail(boolean tail) {
+        this.tail = tail;
+    }
+
+    public boolean tail() {
+        return tail;
+    }
+
+    public Node result() {
+        return result;
+    }
+
+    public void result(Node result) {
+        this.result = result;
+    }
+
+    /**
+     * Returns the state a native procedure stored in this frame. A native
+     * procedure is called again after every procedure call it scheduled, the
+     * state survives those calls.
+     *
+     * @param <T> the type the native procedure stored
+     * @return the stored state or null if nothing was stored yet
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T state() {
+        return (T) state;
+    }
+
+    public void state(Object state) {
+        this.state = state;
+    }
+
+    @Override
+    public String toString() {
+        return call.toString();
+    }
+}
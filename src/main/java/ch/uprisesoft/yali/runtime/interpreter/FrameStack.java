@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Call;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import java.util.Arrays;
+
+/**
+ * The call stack of an interpreter. Frames are kept when popped and reused by
+ * the next push to the same depth, so a stack which reached its working depth
+ * does not allocate anymore. A popped frame stays valid until the next push.
+ *
+ * @author uprisesoft@gmail.com
+ */
+final class FrameStack {
+
+    private Frame[] frames = new Frame[32];
+    private int size = 0;
+
+    Frame push(Call call, Procedure definition) {
+        if (size == frames.length) {
+            frames = Arrays.copyOf(frames, size * 2);
+        }
+
+        Frame frame = frames[size];
+        if (frame == null) {
+            frame = new Frame(call, definition);
+            frames[size] = frame;
+        } else {
+            frame.reset(call, definition);
+        }
+        size++;
+        return frame;
+    }
+
+    Frame pop() {
+        return frames[--size];
+    }
+
+    /**
+     * Removes frames below the top frame, the top frame moves down. The
+     * removed frames are kept for reuse.
+     *
+     * @param count the number of frames to remove
+     */
+    void drop(int count) {
+        Frame top = frames[size - 1];
+        System.arraycopy(frames, size - 1 - count, frames, size - count, count);
+        frames[size - 1 - count] = top;
+        size -= count;
+    }
+
+    Frame peek() {
+        return frames[size - 1];
+    }
+
+    /**
+     * @param depth the distance from the top, 0 is the top frame
+     * @return the frame at that distance
+     */
+    Frame peek(int depth) {
+        return frames[size - 1 - depth];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
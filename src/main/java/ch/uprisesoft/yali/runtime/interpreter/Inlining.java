@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import ch.uprisesoft.yali.exception.TokenTypeException;
+import ch.uprisesoft.yali.exception.UnexpectedCharacterException;
+import ch.uprisesoft.yali.scope.Environment;
+import ch.uprisesoft.yali.scope.Symbol;
+
+/**
+ * The rules both compilers follow to inline control structures: which
+ * literal blocks can be compiled in place of calling the builtin, and which
+ * procedure a call resolves to at compile time.
+ *
+ * @author uprisesoft@gmail.com
+ */
+final class Inlining {
+
+	private Inlining() {
+	}
+
+	/**
+	 * Parses a literal list for inlining. Returns null if the list can not be
+	 * inlined, in that case it is run by the builtin and fails the same way it
+	 * would without compilation.
+	 */
+	static Node block(Interpreter interpreter, Node arg) {
+		if (!arg.type().equals(NodeType.LIST)) {
+			return null;
+		}
+
+		// Defining procedures is a side effect of parsing, it must not happen
+		// before the block is actually run
+		for (Node n : arg.getChildren()) {
+			if (n.type().equals(NodeType.SYMBOL) && n.toSymbolWord().getSymbol().equalsIgnoreCase("to")) {
+				return null;
+			}
+		}
+
+		// A block that does not parse fails when it is run, if it ever is
+		Node program;
+		try {
+			program = interpreter.read(arg.toList());
+		} catch (TokenTypeException | UnexpectedCharacterException e) {
+			return null;
+		}
+
+		for (Node n : program.getChildren()) {
+			if (!n.type().equals(NodeType.PROCCALL)) {
+				return null;
+			}
+		}
+
+		return program;
+	}
+
+	/**
+	 * @return the procedure a name resolves to, or null if it is undefined
+	 */
+	static Procedure resolve(Environment env, Symbol name) {
+		return env.defined(name) ? env.procedure(name) : null;
+	}
+}
@@ -44,10 +44,28 @@ public interface Interpreter extends OutputObserver {
 
     Interpreter loadStdLib();
 
+    /**
+     * Creates an interpreter on the global scope of this one, e.g. to run
+     * calls in another thread. The fork has its own stack and scopes, but
+     * sees the same procedures and global variables. The global scope must
+     * not be changed while forks are running.
+     *
+     * @return a new interpreter sharing the global scope
+     */
+    Interpreter fork();
+
     Interpreter loadStdLib(OutputObserver oo, InputGenerator ig);
 
     void output(Node node);
 
+    /**
+     * Returns the activation frame of the procedure call which is evaluated
+     * right now. Native procedures use it to keep state between calls.
+     *
+     * @return the frame on top of the stack
+     */
+    Frame frame();
+
     /**
      * Pauses the interpreter. This method is intended to be used by native
      * calls only. Use at your own risk. Resume with the resume() Method.
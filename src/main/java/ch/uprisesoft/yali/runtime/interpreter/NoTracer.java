@@ -0,0 +1,30 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+/**
+ * The Tracer used when no Tracer is registered. All events are ignored, so
+ * calls to it are optimized away by the JIT.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public final class NoTracer implements Tracer {
+
+    public static final Tracer INSTANCE = new NoTracer();
+
+    private NoTracer() {
+    }
+}
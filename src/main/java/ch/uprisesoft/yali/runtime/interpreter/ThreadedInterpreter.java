@@ -51,6 +51,11 @@ public class ThreadedInterpreter implements Interpreter {
         return interpreter.loadStdLib();
     }
 
+    @Override
+    public synchronized Interpreter fork() {
+        return interpreter.fork();
+    }
+
     @Override
     public synchronized Interpreter loadStdLib(OutputObserver oo, InputGenerator ig) {
         return interpreter.loadStdLib(oo, ig);
@@ -61,6 +66,11 @@ public class ThreadedInterpreter implements Interpreter {
         interpreter.output(node);
     }
 
+    @Override
+    public synchronized Frame frame() {
+        return interpreter.frame();
+    }
+
     @Override
     public synchronized void pause() {
         interpreter.pause();
@@ -17,31 +17,48 @@ package ch.uprisesoft.yali.runtime.interpreter;
 
 import ch.uprisesoft.yali.ast.node.Call;
 import ch.uprisesoft.yali.ast.node.Node;
-import ch.uprisesoft.yali.lexer.Token;
 import ch.uprisesoft.yali.scope.Environment;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Use a Tracer if you want to see what's happening while interpreting a yali
  * AST. In every relevant action in the Interpreter, the registered Tracer
  * methods are called. This can be used to build e.g. stack traces or debuggers.
  * 
+ * All methods do nothing by default. A Tracer only interested in some events
+ * can override events(), it is then only called for these.
+ * 
  * @author uprisesoft@gmail.com
  */
 public interface Tracer {
-    public void callPrimitive(String name, List<Node> args, Environment env); // OK
-    public void call(String name, List<Node> args, Environment env); // OK
-    public void schedule(String name, Call call, Environment env); // OK
-    public void unschedule(String name, Call call, Environment env); // OK
-    public void arg(String name, Node val, Environment env); // OK
-    public void make(String name, Node val, Environment env); // OK
-    public void thing(String name, Node val, Environment env); // OK
-    public void local(String name, Environment env); // OK
-    public void scope(String name, Environment env); // OK
-    public void unscope(String name, Environment env); // OK
-    public void run(Node val); // OK
-    public void load(Node val); // OK
-    public void tick(Node val);
-    public void pause(Node val); // OK
-    public void resume(Node val); // OK
+
+    public enum Event {
+        CALL_PRIMITIVE, CALL, SCHEDULE, UNSCHEDULE, ARG, MAKE, THING, LOCAL,
+        SCOPE, UNSCOPE, RUN, LOAD, TICK, PAUSE, RESUME
+    }
+
+    /**
+     * @return the events this Tracer wants to be called for, all by default
+     */
+    public default Set<Event> events() {
+        return EnumSet.allOf(Event.class);
+    }
+
+    public default void callPrimitive(String name, List<Node> args, Environment env) {}
+    public default void call(String name, List<Node> args, Environment env) {}
+    public default void schedule(String name, Call call, Environment env) {}
+    public default void unschedule(String name, Call call, Environment env) {}
+    public default void arg(String name, Node val, Environment env) {}
+    public default void make(String name, Node val, Environment env) {}
+    public default void thing(String name, Node val, Environment env) {}
+    public default void local(String name, Environment env) {}
+    public default void scope(String name, Environment env) {}
+    public default void unscope(String name, Environment env) {}
+    public default void run(Node val) {}
+    public default void load(Node val) {}
+    public default void tick(Node val) {}
+    public default void pause(Node val) {}
+    public default void resume(Node val) {}
 }
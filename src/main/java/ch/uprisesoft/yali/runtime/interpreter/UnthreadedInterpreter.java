@@ -17,19 +17,22 @@ package ch.uprisesoft.yali.runtime.interpreter;
 
 import ch.uprisesoft.yali.ast.node.*;
 import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.exception.RecursionException;
 import ch.uprisesoft.yali.parser.Parser;
 import ch.uprisesoft.yali.runtime.io.InputGenerator;
 import ch.uprisesoft.yali.runtime.io.OutputObserver;
-import ch.uprisesoft.yali.runtime.procedures.FunctionNotFoundException;
 import ch.uprisesoft.yali.runtime.procedures.builtin.Arithmetic;
 import ch.uprisesoft.yali.runtime.procedures.builtin.Control;
 import ch.uprisesoft.yali.runtime.procedures.builtin.Data;
+import ch.uprisesoft.yali.runtime.procedures.builtin.Dictionaries;
 import ch.uprisesoft.yali.runtime.procedures.builtin.IO;
 import ch.uprisesoft.yali.runtime.procedures.builtin.Logic;
 import ch.uprisesoft.yali.runtime.procedures.builtin.Template;
 import ch.uprisesoft.yali.scope.Environment;
 import ch.uprisesoft.yali.scope.Scope;
+import ch.uprisesoft.yali.scope.Symbol;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -40,23 +43,81 @@ import java.util.Optional;
  */
 public class UnthreadedInterpreter implements Interpreter {
 
+	// Compiled code runs on the Java stack, deeper calls are evaluated with tick()
+	private static final int MAX_COMPILED_DEPTH = 512;
+
+	// Frames on the stack before a call fails with a RecursionException. Tail
+	// calls do not count, they reuse the frame of their caller.
+	private static final int MAX_DEPTH = 1000000;
+
 	private final List<Tracer> tracers = new ArrayList<>();
+	private Tracer tracer = NoTracer.INSTANCE;
 
-	private final Environment env = new Environment();
+	private final Environment env;
+	private final ClosureCompiler closures = new ClosureCompiler(this);
 	private boolean paused = false;
+	private boolean compiled = false;
+
+	private final FrameStack stack = new FrameStack();
+	// Frames below belong to a tick loop waiting for compiled code
+	private int floor = 0;
+	private final ArrayDeque<Call> program = new ArrayDeque<>();
 
-	private final java.util.Stack<Call> stack = new java.util.Stack<>();
-	private final java.util.List<Call> program = new ArrayList<>();
+	// Calls scheduled by native procedures called from compiled code
+	private final java.util.List<Call> scheduled = new ArrayList<>();
+	private boolean collecting = false;
+
+	// The native procedure called from compiled code, its frame is created on
+	// demand
+	private Call nativeCall;
+	private Procedure nativeDefinition;
+	private Frame nativeFrame;
+	private int compiledDepth = 0;
 
 	private Node lastResult;
 
 	public UnthreadedInterpreter() {
-		env.push(new Scope("global"));
+		this(new Environment());
+	}
+
+	/**
+	 * Creates an interpreter on the given environment, e.g. a
+	 * ShallowEnvironment. The environment must not contain any scopes yet.
+	 *
+	 * @param env an empty environment
+	 */
+	public UnthreadedInterpreter(Environment env) {
+		this(env, new Scope("global"));
+	}
+
+	private UnthreadedInterpreter(Environment env, Scope global) {
+		this.env = env;
+		env.push(global);
+	}
+
+	/**
+	 * Switches compiled mode on or off. In compiled mode, top level statements
+	 * are compiled to closures and evaluated directly instead of tick by tick.
+	 * Statements which may reach pause are still evaluated with tick(). If
+	 * pause is called from a compiled statement anyway, e.g. from a list built
+	 * at runtime, the interpreter pauses after that statement.
+	 *
+	 * @param compiled true to compile top level statements
+	 * @return this interpreter
+	 */
+	public UnthreadedInterpreter compiled(boolean compiled) {
+		this.compiled = compiled;
+		return this;
+	}
+
+	public boolean compiled() {
+		return compiled;
 	}
 
 	@Override
 	public void addTracer(Tracer tracer) {
 		tracers.add(tracer);
+		this.tracer = CompositeTracer.of(tracers);
 		env.addTracer(tracer);
 	}
 
@@ -72,7 +133,7 @@ public class UnthreadedInterpreter implements Interpreter {
 
 	@Override
 	public boolean finished() {
-		return stack.empty() && program.isEmpty();
+		return stack.isEmpty() && program.isEmpty();
 	}
 
 	/**
@@ -84,7 +145,7 @@ public class UnthreadedInterpreter implements Interpreter {
 	 */
 	@Override
 	public Node run(Node node) {
-		tracers.forEach(t -> t.run(node));
+		tracer.run(node);
 
 		if (!node.type().equals(NodeType.LIST)) {
 			throw new NodeTypeException(node, node.type(), NodeType.LIST);
@@ -106,7 +167,7 @@ public class UnthreadedInterpreter implements Interpreter {
 	 */
 	@Override
 	public Node run(Call call) {
-		tracers.forEach(t -> t.run(call));
+		tracer.run(call);
 
 		load(call);
 
@@ -129,7 +190,12 @@ public class UnthreadedInterpreter implements Interpreter {
 	@Override
 	public void reset() {
 		program.clear();
-		stack.clear();
+		while (!stack.isEmpty()) {
+			Frame frame = stack.pop();
+			if (!frame.definition().isMacro()) {
+				env.pop();
+			}
+		}
 	}
 
 	/**
@@ -142,7 +208,7 @@ public class UnthreadedInterpreter implements Interpreter {
 	 */
 	@Override
 	public void load(Node node) {
-		tracers.forEach(t -> t.load(node));
+		tracer.load(node);
 
 		switch (node.type()) {
 			case LIST:
@@ -152,7 +218,7 @@ public class UnthreadedInterpreter implements Interpreter {
 				}
 				break;
 			case PROCCALL:
-				stack.push(node.toProcedureCall());
+				schedule(node.toProcedureCall());
 				break;
 			default:
 				lastResult = node;
@@ -167,7 +233,7 @@ public class UnthreadedInterpreter implements Interpreter {
 	 */
 	@Override
 	public Node resume() {
-		tracers.forEach(t -> t.resume(stack.peek()));
+		tracer.resume(stack.isEmpty() ? null : stack.peek().call());
 		paused = false;
 
 		while (tick()) {
@@ -182,7 +248,7 @@ public class UnthreadedInterpreter implements Interpreter {
 	 */
 	@Override
 	public void pause() {
-		tracers.forEach(t -> t.pause(stack.peek()));
+		tracer.pause(frame().call());
 		paused = true;
 	}
 
@@ -211,7 +277,8 @@ public class UnthreadedInterpreter implements Interpreter {
 	/**
 	 * Parses an input list to a executable syntax tree. This is useful e.g. for
 	 * control structures or other constructs which run a list as procedure
-	 * calls
+	 * calls. A list is only lexed and parsed again if procedures were defined
+	 * since it was last read, otherwise the cached syntax tree is returned.
 	 *
 	 * @return the parsed syntax tree, top element is always a list of procedure
 	 * calls
@@ -219,7 +286,14 @@ public class UnthreadedInterpreter implements Interpreter {
 	 */
 	@Override
 	public Node read(ch.uprisesoft.yali.ast.node.List list) {
-		return new Parser(this).read(list);
+		Node parsed = list.parsed(env, env.epoch());
+
+		if (parsed == null) {
+			parsed = new Parser(this).read(list);
+			list.parsed(parsed, env, env.epoch());
+		}
+
+		return parsed;
 	}
 
 	/**
@@ -238,12 +312,23 @@ public class UnthreadedInterpreter implements Interpreter {
 		lastResult = node;
 	}
 
+	@Override
+	public Frame frame() {
+		if (nativeCall != null) {
+			if (nativeFrame == null) {
+				nativeFrame = new Frame(nativeCall, nativeDefinition);
+			}
+			return nativeFrame;
+		}
+		return stack.peek();
+	}
+
 	/**
 	 * This is the main worker method of the interpreter. It does one atomic
 	 * step per call. The interpreter primarily is a stack machine, but because
 	 * there can be multiple top-level commands scheduled, there is also a list
 	 * for all loaded procedure calls. If the stack is empty, it moves the first
-	 * Call from the program list to the execution stack. If there is a call on
+	 * Call from the program list to the execution stack. If there is a frame on
 	 * the stack, it checks if it's already evaluated. If yes, it is unscheduled
 	 * from the stack, the result is bubbled up and then returns. If no, it
 	 * first checks if there are more arguments to evaluate. If yes, it
@@ -259,9 +344,9 @@ public class UnthreadedInterpreter implements Interpreter {
 	@Override
 	public boolean tick() {
 		if (stack.isEmpty()) {
-			tracers.forEach(t -> t.tick(Node.none()));
+			tracer.tick(Node.none());
 		} else {
-			tracers.forEach(t -> t.tick(stack.peek()));
+			tracer.tick(stack.peek().call());
 		}
         /*
         Global Program state
@@ -272,13 +357,16 @@ public class UnthreadedInterpreter implements Interpreter {
 		}
 
 		// If the stack is empty, check for more program lines to evaluate
-		if (stack.empty()) {
+		if (stack.isEmpty()) {
 			// If both program and stack are empty, execution is finished or no
 			// program was loaded in the first place
 			if (program.isEmpty()) {
 				return false;
+			} else if (compiled && !closures.pauses(program.peek())) {
+				lastResult = closures.statement(program.poll()).eval();
+				return !program.isEmpty();
 			} else {
-				schedule(program.remove(0));
+				schedule(program.poll());
 				return true;
 			}
 		}
@@ -288,118 +376,271 @@ public class UnthreadedInterpreter implements Interpreter {
          */
 
 		// Check for finished procedures. A procedure is finished when evaluated()
-		// returns true. If stack is 1 and program empty, this
-		// is the result. Else, deschedule the call and set the result to the
-		// previous call. Has to be done before argument handling.
+		// returns true. Deschedule the frame and hand the result to the
+		// previous frame. Has to be done before argument handling.
 		if (stack.peek().evaluated()) {
 			unschedule();
-			if (stack.empty() && !program.isEmpty()) {
-				return true;
-			} else if (stack.empty() && program.isEmpty()) {
-				return false;
-			} else if (stack.size() == 1 && stack.peek().evaluated() && program.isEmpty()) {
-				return false;
+			if (stack.isEmpty()) {
+				return !program.isEmpty();
 			} else if (stack.peek().hasMoreParameters()) {
 				stack.peek().arg(lastResult);
-				return true;
-			} else {
-				return true;
 			}
+			return true;
 		}
 
         /*
         Arguments evaluation
          */
 
+		Frame frame = stack.peek();
+
 		// Arguments are evaluated first. If a call does not have all of its argument
 		// evaluated, schedule the next argument to be evaluated
-		if (stack.peek().hasMoreParameters()) {
-			Node nextParam = stack.peek().nextParameter();
-			tracers.forEach(t -> t.arg(stack.peek().getName(), nextParam, env));
+		if (frame.hasMoreParameters()) {
+			Node nextParam = frame.nextParameter();
+			tracer.arg(frame.getName(), nextParam, env);
 
 			// If it's not a procedure call, no evaluation is necessary. Add to
 			// arguments as-is.
 			if (!nextParam.type().equals(NodeType.PROCCALL)) {
-				stack.peek().arg(nextParam);
-				return true;
+				frame.arg(nextParam);
 			} else {
 				schedule(nextParam.toProcedureCall());
-				return true;
 			}
+			return true;
 		}
 
         /*
         Procedure evaluation
          */
-		Call call = stack.peek();
-
-		// Prepare env
-		for (int i = 0; i < call.definition().getArity(); i++) {
-			env.local(call.definition().getArgs().get(i));
-			env.make(
-					call.definition().getArgs().get(i),
-					call.args().get(i)
-			);
+		Procedure definition = frame.definition();
+
+		// Prepare env. Native procedures may be called more than once, but
+		// their arguments have to be bound only the first time.
+		if (!frame.bound()) {
+			if (!definition.isNative() && !definition.isMacro()) {
+				tail();
+			}
+			Symbol[] params = definition.getArgSymbols();
+			for (int i = 0; i < params.length; i++) {
+				env.bind(params[i], i, frame.args().get(i));
+			}
+			frame.bound(true);
 		}
 
-		if (call.definition().isNative()) {
-			tracers.forEach(t -> t.callPrimitive(call.getName(), call.args(), env));
+		if (definition.isNative()) {
+			tracer.callPrimitive(frame.getName(), frame.args(), env);
 
-			// With a native call, the first BiFunction is applied. It should
-			// return a result if it's a pure procedure or Node.boolean(true) if
-			// there are more steps necessary
-			Procedure proc = (Procedure) call.definition();
-			Optional<Node> result = proc.getSimpleNativeCall().apply(this, call.args());
+			// With a native call, the BiFunction is applied. It returns a result
+			// if it's done, or nothing if it scheduled more calls and wants to
+			// be called again after they are evaluated.
+			Optional<Node> result = definition.getSimpleNativeCall().apply(this, frame.args());
 
 			if (result.isPresent()) {
-				call.result(result.get());
-				call.evaluated(true);
+				frame.result(result.get());
+				frame.evaluated(true);
 			}
 
 			return true;
 		} else {
 			// Handling of user-defined procedure calls. If the procedure has more
 			// calls in its children list, the next one is scheduled.
-			tracers.forEach(t -> t.call(call.getName(), call.args(), env));
-			if (call.hasMoreCalls()) {
-				schedule(call.nextCall());
+			tracer.call(frame.getName(), frame.args(), env);
+			if (frame.hasMoreCalls()) {
+				Call next = frame.nextCall();
+				frame.tail(!frame.hasMoreCalls());
+				schedule(next);
 			} else {
 				// A user derfined procedure call is evaluated as soon as it has no
 				// more procedure calls in it's children list.
-				call.evaluated(true);
-				call.result(lastResult);
+				frame.evaluated(true);
+				frame.result(lastResult);
 			}
 			return true;
 		}
 	}
 
+	/**
+	 * Eliminates a tail call. The call on top of the stack has its arguments
+	 * evaluated but not bound yet. If the frames below only wait to hand its
+	 * result on, up to and including the user defined procedure it was called
+	 * from, they are dropped and the call continues in the scope of that
+	 * procedure. This way, tail recursive procedures run in constant space.
+	 *
+	 * Frames waiting to hand the result on are control structures running the
+	 * last call of a block, and output waiting for its argument.
+	 */
+	private void tail() {
+		int depth = 1;
+		int scopes = 1;
+		while (depth < stack.size() - floor) {
+			Frame caller = stack.peek(depth);
+			Procedure definition = caller.definition();
+
+			if (definition.isPassing()
+					&& caller.args().size() == caller.call().getChildren().size() - 1) {
+				if (!definition.isMacro()) {
+					scopes++;
+				}
+			} else if (!caller.tail()) {
+				return;
+			} else if (!definition.isMacro()) {
+				if (definition.isNative() || !env.tail(scopes)) {
+					return;
+				}
+				for (int i = depth; i > 0; i--) {
+					tracer.unschedule(stack.peek(i).getName(), stack.peek(i).call(), env);
+				}
+				stack.drop(depth);
+				return;
+			}
+			depth++;
+		}
+	}
+
 	private void unschedule() {
-		Call call = stack.pop();
+		Frame frame = stack.pop();
 
-		if (!call.definition().isMacro()) {
-			tracers.forEach(t -> t.unscope(env.peek().name(), env));
+		if (!frame.definition().isMacro()) {
+			tracer.unscope(env.peek().name(), env);
 			env.pop();
 		}
-		lastResult = call.result();
-		tracers.forEach(t -> t.unschedule(call.getName(), call, env));
+		lastResult = frame.result();
+		tracer.unschedule(frame.getName(), frame.call(), env);
+	}
+
+	/**
+	 * Calls a procedure from compiled code. Native procedures get a frame of
+	 * their own, calls they schedule are compiled and evaluated before they are
+	 * called again.
+	 */
+	Node invoke(Call call, Procedure definition, java.util.List<Node> args) {
+		if (definition.isNative()) {
+			Call outerCall = nativeCall;
+			Procedure outerDefinition = nativeDefinition;
+			Frame outerFrame = nativeFrame;
+			boolean outerCollecting = collecting;
+			int mark = scheduled.size();
+
+			nativeCall = call;
+			nativeDefinition = definition;
+			nativeFrame = null;
+			collecting = true;
+			try {
+				tracer.callPrimitive(call.getName(), args, env);
+				Optional<Node> result = definition.getSimpleNativeCall().apply(this, args);
+				while (!result.isPresent()) {
+					// Last scheduled runs first, as on the stack
+					while (scheduled.size() > mark) {
+						lastResult = closures.statement(scheduled.remove(scheduled.size() - 1)).eval();
+					}
+					result = definition.getSimpleNativeCall().apply(this, args);
+				}
+				lastResult = result.get();
+				return lastResult;
+			} finally {
+				while (scheduled.size() > mark) {
+					scheduled.remove(scheduled.size() - 1);
+				}
+				nativeCall = outerCall;
+				nativeDefinition = outerDefinition;
+				nativeFrame = outerFrame;
+				collecting = outerCollecting;
+			}
+		}
+
+		if (compiledDepth >= MAX_COMPILED_DEPTH) {
+			return tick(call, definition, args);
+		}
+
+		String name = call.symbol().name();
+		boolean scoped = !definition.isMacro();
+		if (scoped) {
+			env.push(name, definition.getSlots());
+		}
+		compiledDepth++;
+		try {
+			Symbol[] params = definition.getArgSymbols();
+			for (int i = 0; i < params.length; i++) {
+				env.bind(params[i], i, args.get(i));
+			}
+			tracer.call(name, args, env);
+
+			lastResult = closures.body(definition).eval();
+			return lastResult;
+		} finally {
+			compiledDepth--;
+			if (scoped) {
+				env.pop();
+			}
+		}
+	}
+
+	/**
+	 * Evaluates a call with already evaluated arguments tick by tick, on the
+	 * stack of this interpreter instead of the Java stack. A pause during the
+	 * evaluation takes effect after the compiled statement.
+	 */
+	private Node tick(Call call, Procedure definition, java.util.List<Node> args) {
+		int base = stack.size();
+		int outerFloor = floor;
+		floor = base;
+
+		Frame frame = stack.push(call, definition);
+		args.forEach(frame::arg);
+		if (!definition.isMacro()) {
+			env.push(call.symbol().name(), definition.getSlots());
+		}
+
+		Call outerCall = nativeCall;
+		boolean outerCollecting = collecting;
+		nativeCall = null;
+		collecting = false;
+		boolean pause = false;
+		try {
+			while (stack.size() > base) {
+				if (paused) {
+					pause = true;
+					paused = false;
+				}
+				tick();
+			}
+		} catch (RuntimeException e) {
+			while (stack.size() > base) {
+				if (!stack.pop().definition().isMacro()) {
+					env.pop();
+				}
+			}
+			throw e;
+		} finally {
+			nativeCall = outerCall;
+			collecting = outerCollecting;
+			paused |= pause;
+			floor = outerFloor;
+		}
+
+		return lastResult;
 	}
 
 	@Override
 	public void schedule(Call call) {
-		String name = call.getName().toLowerCase();
+		if (collecting) {
+			scheduled.add(call);
+			return;
+		}
+
+		Symbol name = call.symbol();
 
-		tracers.forEach(t -> t.schedule(name, call, env));
+		tracer.schedule(name.name(), call, env);
 
-		if (!env.defined(name)) {
-			throw new FunctionNotFoundException(call.getName());
+		if (stack.size() >= MAX_DEPTH) {
+			throw new RecursionException(call.getName(), call);
 		}
 
-		call.definition((Procedure) env.procedure(name));
-		call.reset();
-		stack.push(call);
-		if (!call.definition().isMacro()) {
-			env.push(new Scope(name));
-			tracers.forEach(t -> t.scope(env.peek().name(), env));
+		Frame frame = stack.push(call, env.procedure(call));
+		if (!frame.definition().isMacro()) {
+			env.push(name.name(), frame.definition().getSlots());
+			tracer.scope(env.peek().name(), env);
 		}
 	}
 
@@ -421,9 +662,22 @@ public class UnthreadedInterpreter implements Interpreter {
 		Data data = new Data();
 		data.registerProcedures(this);
 
+		Dictionaries dictionaries = new Dictionaries();
+		dictionaries.registerProcedures(this);
+
+		closures.builtins(env);
+
 		return this;
 	}
 
+	@Override
+	public UnthreadedInterpreter fork() {
+		UnthreadedInterpreter fork = new UnthreadedInterpreter(env.create(), env.first());
+		fork.closures.builtins(fork.env);
+		fork.compiled = compiled;
+		return fork;
+	}
+
 	@Override
 	public Interpreter loadStdLib(OutputObserver oo, InputGenerator ig) {
 		IO io = new IO();
@@ -25,6 +25,7 @@ import ch.uprisesoft.yali.ast.node.word.Word;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
 import ch.uprisesoft.yali.runtime.procedures.ProcedureProvider;
 
+import java.math.BigDecimal;
 import java.util.Optional;
 
 /**
@@ -33,106 +34,67 @@ import java.util.Optional;
  */
 public class Arithmetic implements ProcedureProvider {
 
-    private boolean checkArgs(Node node) {
-        return !node.type().equals(NodeType.FLOAT) && !node.type().equals(NodeType.INTEGER);
-    }
-
-    public Optional<Node> add(Interpreter interpreter, java.util.List<Node> args) {
-        Word left = (Word) args.get(0);
-        Word right = (Word) args.get(1);
-
-        if (checkArgs(left)) {
-            throw new NodeTypeException(Node.symbol("+"), left.type(), NodeType.NUMBER);
-        }
-        if (checkArgs(right)) {
-            throw new NodeTypeException(Node.symbol("+"), right.type(), NodeType.NUMBER);
+    private static Word number(Node node, String operator) {
+        if (node.type() != NodeType.INTEGER && node.type() != NodeType.FLOAT) {
+            throw new NodeTypeException(Node.symbol(operator), node.type(), NodeType.NUMBER);
         }
+        return (Word) node;
+    }
 
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new IntegerWord(left.getInteger() + right.getInteger()));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getInteger() + right.getFloat()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new FloatWord(left.getFloat() + right.getInteger()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getFloat() + right.getFloat()));
+    private static IntegerWord truncate(double value) {
+        if (Math.abs(value) < 0x1p62 || !Double.isFinite(value)) {
+            return IntegerWord.of((long) value);
         }
+        return IntegerWord.of(new BigDecimal(value).toBigInteger());
+    }
 
-        return Optional.of(Node.none());
+    private static boolean integers(Word left, Word right) {
+        return left.type() == NodeType.INTEGER && right.type() == NodeType.INTEGER;
     }
 
-    public Optional<Node> sub(Interpreter interpreter, java.util.List<Node> args) {
-        Word left = (Word) args.get(0);
-        Word right = (Word) args.get(1);
+    public Optional<Node> add(Interpreter interpreter, java.util.List<Node> args) {
+        Word left = number(args.get(0), "+");
+        Word right = number(args.get(1), "+");
 
-        if (checkArgs(left)) {
-            throw new NodeTypeException(Node.symbol("-"), left.type(), NodeType.NUMBER);
-        }
-        if (checkArgs(right)) {
-            throw new NodeTypeException(Node.symbol("-"), right.type(), NodeType.NUMBER);
+        if (integers(left, right)) {
+            return Optional.of(((IntegerWord) left).add((IntegerWord) right));
         }
+        return Optional.of(new FloatWord(left.doubleValue() + right.doubleValue()));
+    }
+
+    public Optional<Node> sub(Interpreter interpreter, java.util.List<Node> args) {
+        Word left = number(args.get(0), "-");
+        Word right = number(args.get(1), "-");
 
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new IntegerWord(left.getInteger() - right.getInteger()));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getInteger() - right.getFloat()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new FloatWord(left.getFloat() - right.getInteger()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getFloat() - right.getFloat()));
+        if (integers(left, right)) {
+            return Optional.of(((IntegerWord) left).sub((IntegerWord) right));
         }
-        return Optional.of(Node.none());
+        return Optional.of(new FloatWord(left.doubleValue() - right.doubleValue()));
     }
 
     public Optional<Node> mul(Interpreter interpreter, java.util.List<Node> args) {
-        Word left = (Word) args.get(0);
-        Word right = (Word) args.get(1);
+        Word left = number(args.get(0), "*");
+        Word right = number(args.get(1), "*");
 
-        if (checkArgs(left)) {
-            throw new NodeTypeException(Node.symbol("*"), left.type(), NodeType.NUMBER);
+        if (integers(left, right)) {
+            return Optional.of(((IntegerWord) left).mul((IntegerWord) right));
         }
-        if (checkArgs(right)) {
-            throw new NodeTypeException(Node.symbol("*"), right.type(), NodeType.NUMBER);
-        }
-
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new IntegerWord(left.getInteger() * right.getInteger()));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getInteger() * right.getFloat()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new FloatWord(left.getFloat() * right.getInteger()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getFloat() * right.getFloat()));
-        }
-        return Optional.of(Node.none());
+        return Optional.of(new FloatWord(left.doubleValue() * right.doubleValue()));
     }
 
     public Optional<Node> div(Interpreter interpreter, java.util.List<Node> args) {
-        Word left = (Word) args.get(0);
-        Word right = (Word) args.get(1);
-
-        if (checkArgs(left)) {
-            throw new NodeTypeException(Node.symbol("/"), left.type(), NodeType.NUMBER);
-        }
-        if (checkArgs(right)) {
-            throw new NodeTypeException(Node.symbol("/"), right.type(), NodeType.NUMBER);
-        }
+        Word left = number(args.get(0), "/");
+        Word right = number(args.get(1), "/");
 
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new IntegerWord(left.getInteger() / right.getInteger()));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getInteger() / right.getFloat()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(new FloatWord(left.getFloat() / right.getInteger()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(new FloatWord(left.getFloat() / right.getFloat()));
+        if (integers(left, right)) {
+            return Optional.of(((IntegerWord) left).div((IntegerWord) right));
         }
-        return Optional.of(Node.none());
+        return Optional.of(new FloatWord(left.doubleValue() / right.doubleValue()));
     }
     
     public Optional<Node> mod(Interpreter interpreter, java.util.List<Node> args) {
-        Word left = (Word) args.get(0);
-        Word right = (Word) args.get(1);
+        Node left = args.get(0);
+        Node right = args.get(1);
 
         if (!left.type().equals(NodeType.INTEGER)) {
             throw new NodeTypeException(left, left.type(), NodeType.INTEGER);
@@ -141,7 +103,7 @@ public class Arithmetic implements ProcedureProvider {
             throw new NodeTypeException(right, right.type(), NodeType.NUMBER);
         }
 
-        return Optional.of(new IntegerWord(left.getInteger() % right.getInteger()));
+        return Optional.of(left.toIntegerWord().mod(right.toIntegerWord()));
     }
     
     public Optional<Node> integer(Interpreter interpreter, java.util.List<Node> args) {
@@ -151,7 +113,7 @@ public class Arithmetic implements ProcedureProvider {
             case INTEGER:
                 return Optional.of(arg);
             case FLOAT:
-                return Optional.of(Node.integer(arg.toFloatWord().getFloat().intValue()));
+                return Optional.of(truncate(arg.doubleValue()));
             default:
                 throw new NodeTypeException(arg, arg.type(), NodeType.FLOAT, NodeType.INTEGER);
         }
@@ -165,7 +127,7 @@ public class Arithmetic implements ProcedureProvider {
             case INTEGER:
                 return Optional.of(arg);
             case FLOAT:
-                return Optional.of(Node.integer((int) Math.round(arg.toFloatWord().getFloat())));
+                return Optional.of(truncate(Math.floor(arg.doubleValue() + 0.5)));
             default:
                 throw new NodeTypeException(arg, arg.type(), NodeType.FLOAT, NodeType.INTEGER);
         }
@@ -17,11 +17,12 @@ package ch.uprisesoft.yali.runtime.procedures.builtin;
 
 import ch.uprisesoft.yali.ast.node.*;
 import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.runtime.interpreter.Frame;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
 import ch.uprisesoft.yali.runtime.procedures.ProcedureProvider;
+import ch.uprisesoft.yali.scope.Symbol;
 import ch.uprisesoft.yali.scope.VariableNotFoundException;
 
-import java.util.ArrayList;
 import java.util.Optional;
 
 /**
@@ -37,40 +38,39 @@ public class Control implements ProcedureProvider {
 
 	public Optional<Node> thing(Interpreter interpreter, java.util.List<Node> args) {
 
-		final String name;
+		final Symbol name;
 		switch (args.get(0).type()) {
 			case SYMBOL:
-				name = args.get(0).toSymbolWord().getSymbol();
+				name = args.get(0).toSymbolWord().symbol();
 				break;
 			case QUOTE:
-				name = args.get(0).toQuotedWord().getQuote();
+				name = args.get(0).toQuotedWord().symbol();
 				break;
 			default:
 				throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.SYMBOL, NodeType.QUOTE);
 		}
 
 		if (!interpreter.env().thingable(name)) {
-			throw new VariableNotFoundException(name);
+			throw new VariableNotFoundException(name.name());
 		}
 
 		return Optional.ofNullable(interpreter.env().thing(name));
 	}
 
 	public Optional<Node> local(Interpreter interpreter, java.util.List<Node> args) {
-		final String name;
+		final Symbol name;
 
 		switch (args.get(0).type()) {
 			case SYMBOL:
-				name = args.get(0).toSymbolWord().getSymbol();
+				name = args.get(0).toSymbolWord().symbol();
 				break;
 			case QUOTE:
-				name = args.get(0).toQuotedWord().getQuote();
+				name = args.get(0).toQuotedWord().symbol();
 				break;
 			default:
 				throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.SYMBOL, NodeType.QUOTE);
 		}
 
-		interpreter.tracers().forEach(t -> t.local(name, interpreter.env()));
 		interpreter.env().local(name);
 
 		return Optional.of(Node.nil());
@@ -78,14 +78,14 @@ public class Control implements ProcedureProvider {
 
 	public Optional<Node> make(Interpreter interpreter, java.util.List<Node> args) {
 		final Node newVar;
-		final String name;
+		final Symbol name;
 
 		switch (args.get(0).type()) {
 			case SYMBOL:
-				name = args.get(0).toSymbolWord().getSymbol();
+				name = args.get(0).toSymbolWord().symbol();
 				break;
 			case QUOTE:
-				name = args.get(0).toQuotedWord().getQuote();
+				name = args.get(0).toQuotedWord().symbol();
 				break;
 			default:
 				throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.SYMBOL, NodeType.QUOTE);
@@ -100,14 +100,14 @@ public class Control implements ProcedureProvider {
 
 	public Optional<Node> localmake(Interpreter interpreter, java.util.List<Node> args) {
 		Node newVar;
-		String name;
+		Symbol name;
 
 		switch (args.get(0).type()) {
 			case SYMBOL:
-				name = args.get(0).toSymbolWord().getSymbol();
+				name = args.get(0).toSymbolWord().symbol();
 				break;
 			case QUOTE:
-				name = args.get(0).toQuotedWord().getQuote();
+				name = args.get(0).toQuotedWord().symbol();
 				break;
 			default:
 				throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.SYMBOL, NodeType.QUOTE);
@@ -120,15 +120,10 @@ public class Control implements ProcedureProvider {
 		return Optional.ofNullable(newVar);
 	}
 
-	private java.util.List<Node> ifexprsToRun;
-
 	public Optional<Node> ifexpr(Interpreter interpreter, java.util.List<Node> args) {
-		Node result = Node.none();
-
-		if (ifexprsToRun == null) {
-
-			ifexprsToRun = new ArrayList<>();
+		Frame frame = interpreter.frame();
 
+		if (frame.state() == null) {
 			Node condition = args.get(0);
 			Node iftrue = args.get(1);
 
@@ -136,38 +131,20 @@ public class Control implements ProcedureProvider {
 				throw new NodeTypeException(condition, condition.type(), NodeType.BOOLEAN);
 			}
 
-			if (condition.toBooleanWord().getBoolean()) {
-				Node ast = interpreter.read(iftrue.toList());
-				ifexprsToRun.addAll(ast.getChildren());
-			} else {
-//                result = it.output(Node.nil());
+			if (!condition.toBooleanWord().getBoolean()) {
 				return Optional.of(Node.nil());
 			}
 
+			frame.state(new Block(interpreter.read(iftrue.toList()), 1));
 		}
 
-		if (!ifexprsToRun.isEmpty()) {
-			Call next = ifexprsToRun.remove(0).toProcedureCall();
-			interpreter.schedule(next);
-		}
-
-		if (ifexprsToRun.isEmpty()) {
-			ifexprsToRun = null;
-			return Optional.of(result);
-		}
-
-			return Optional.empty();
+		return runBlock(interpreter, frame.state());
 	}
 
-
-	private java.util.List<Node> ifelseexprsToRun;
-
 	public Optional<Node> ifelseexpr(Interpreter interpreter, java.util.List<Node> args) {
-		Node result = Node.none();
-
-		if (ifelseexprsToRun == null) {
-			ifelseexprsToRun = new ArrayList<>();
+		Frame frame = interpreter.frame();
 
+		if (frame.state() == null) {
 			Node condition = args.get(0);
 			Node iftrue = args.get(1);
 			Node iffalse = args.get(2);
@@ -177,35 +154,19 @@ public class Control implements ProcedureProvider {
 			}
 
 			if (condition.toBooleanWord().getBoolean()) {
-				Node ast = interpreter.read(iftrue.toList());
-				ifelseexprsToRun.addAll(ast.getChildren());
+				frame.state(new Block(interpreter.read(iftrue.toList()), 1));
 			} else {
-				Node ast = interpreter.read(iffalse.toList());
-				ifelseexprsToRun.addAll(ast.getChildren());
+				frame.state(new Block(interpreter.read(iffalse.toList()), 1));
 			}
 		}
 
-		if (!ifelseexprsToRun.isEmpty()) {
-			Call next = ifelseexprsToRun.remove(0).toProcedureCall();
-			interpreter.schedule(next);
-		}
-
-		if (ifelseexprsToRun.isEmpty()) {
-			ifelseexprsToRun = null;
-			return Optional.of(result);
-		}
-
-		return Optional.empty();
+		return runBlock(interpreter, frame.state());
 	}
 
-	private java.util.List<Node> repeatexprToRun;
-
 	public Optional<Node> repeat(Interpreter interpreter, java.util.List<Node> args) {
-		Node result = Node.none();
-
-		if (repeatexprToRun == null) {
-			repeatexprToRun = new ArrayList<>();
+		Frame frame = interpreter.frame();
 
+		if (frame.state() == null) {
 			Node control = args.get(0);
 			Node block = args.get(1);
 
@@ -217,51 +178,40 @@ public class Control implements ProcedureProvider {
 				throw new NodeTypeException(block, block.type(), NodeType.LIST);
 			}
 
-			Integer idx = control.toIntegerWord().getInteger();
-			result = Node.nil();
-
-			for (int i = 0; i < idx; i++) {
-				Node ast = interpreter.read(block.toList());
-				repeatexprToRun.addAll(ast.getChildren());
-//                result = run(scope, block.toList());
-			}
-		}
-
-		if (!repeatexprToRun.isEmpty()) {
-			Call next = repeatexprToRun.remove(0).toProcedureCall();
-			interpreter.schedule(next);
-//            it.schedule(it.read("print \"onemore").getChildren().get(0).toProcedureCall());
-		}
-
-		if (repeatexprToRun.isEmpty()) {
-			repeatexprToRun = null;
-			return  Optional.of(result);
+			// Iterations run one after another, so they can share the calls
+			frame.state(new Block(interpreter.read(block.toList()), control.toIntegerWord().getInteger()));
 		}
 
-		return Optional.empty();
+		return runBlock(interpreter, frame.state());
 	}
 
-	private java.util.List<Node> proceduresToRun;
-
 	public Optional<Node> run(Interpreter interpreter, java.util.List<Node> args) {
+		Frame frame = interpreter.frame();
 
-		Node result = Node.none();
-
-		if (proceduresToRun == null) {
-			proceduresToRun = new ArrayList<>();
-			Node ast = interpreter.read(args.get(0).toList());
-			proceduresToRun.addAll(ast.getChildren());
+		if (frame.state() == null) {
+			frame.state(new Block(interpreter.read(args.get(0).toList()), 1));
 		}
 
-		Call next = proceduresToRun.remove(0).toProcedureCall();
-		interpreter.schedule(next);
+		return runBlock(interpreter, frame.state());
+	}
+
+	/**
+	 * Schedules the next call of a block. When all calls are evaluated, the
+	 * result of the last one is the result of the block.
+	 */
+	private Optional<Node> runBlock(Interpreter interpreter, Block block) {
+		if (block.hasNext()) {
+			Call next = block.next();
+			interpreter.frame().tail(!block.hasNext());
+			interpreter.schedule(next);
+			return Optional.empty();
+		}
 
-		if (proceduresToRun.isEmpty()) {
-			proceduresToRun = null;
-			return Optional.of(result);
+		if (block.started()) {
+			return Optional.of(interpreter.lastResult());
 		}
 
-		return Optional.empty();
+		return Optional.of(Node.nil());
 	}
 
 	public Optional<Node> output(Interpreter interpreter, java.util.List<Node> args) {
@@ -282,7 +232,7 @@ public class Control implements ProcedureProvider {
 		it.env().define(new Procedure("localmake", this::localmake, "__name__", "__value__").macro());
 		it.env().define(new Procedure("repeat", this::repeat, "__control__", "__block__").macro());
 		it.env().define(new Procedure("run", this::run, "__block__").macro());
-		it.env().define(new Procedure("output", this::output, "__block__"));
+		it.env().define(new Procedure("output", this::output, "__block__").passing());
 		it.env().define(new Procedure("stop", this::output));
 		it.env().define(new Procedure("ifelse", this::ifelseexpr, "__condition__", "__iftrue__", "__iffalse__").macro());
 		it.env().define(new Procedure("if", this::ifexpr, "__condition__", "__iftrue__").macro());
@@ -290,4 +240,39 @@ public class Control implements ProcedureProvider {
 
 		return it;
 	}
+
+	/**
+	 * The calls of a block which are still to run. A block can be run several
+	 * times in a row, e.g. by repeat.
+	 */
+	private static class Block {
+
+		private final java.util.List<Node> calls;
+		private final int times;
+		// The next call is calls.get(pos) in run number round
+		private int pos = 0;
+		private int round = 0;
+
+		private Block(Node program, int times) {
+			this.calls = program.getChildren();
+			this.times = times;
+		}
+
+		private boolean hasNext() {
+			return round < times && !calls.isEmpty();
+		}
+
+		private Call next() {
+			Call next = calls.get(pos++).toProcedureCall();
+			if (pos == calls.size()) {
+				pos = 0;
+				round++;
+			}
+			return next;
+		}
+
+		private boolean started() {
+			return pos > 0 || round > 0;
+		}
+	}
 }
@@ -17,13 +17,10 @@ package ch.uprisesoft.yali.runtime.procedures.builtin;
 
 import ch.uprisesoft.yali.ast.node.*;
 import ch.uprisesoft.yali.exception.NodeTypeException;
-import ch.uprisesoft.yali.ast.node.word.BooleanWord;
 import ch.uprisesoft.yali.ast.node.word.QuotedWord;
 import ch.uprisesoft.yali.ast.node.word.SymbolWord;
-import ch.uprisesoft.yali.ast.node.word.Word;
 import java.util.ArrayList;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
-import java.util.Collections;
 import java.util.Optional;
 import java.util.UUID;
 import ch.uprisesoft.yali.runtime.procedures.ProcedureProvider;
@@ -37,10 +34,8 @@ public class Data implements ProcedureProvider {
     // Constructors
     public Optional<Node> reverse(Interpreter interpreter, java.util.List<Node> args) {
         if (args.get(0).type().equals(NodeType.LIST)) {
-            List resultList = new List();
-            java.util.List<Node> forwardList = args.get(0).getChildren();
-            Collections.reverse(forwardList);
-            resultList.addChildren(forwardList);
+            List resultList = new List(args.get(0).getChildren());
+            resultList.reverse();
             return Optional.of(resultList);
         } else if (args.get(0).type().equals(NodeType.QUOTE)) {
             StringBuilder resultString = new StringBuilder(args.get(0).toQuotedWord().getQuote());
@@ -55,10 +50,7 @@ public class Data implements ProcedureProvider {
 
     public Optional<Node> fput(Interpreter interpreter, java.util.List<Node> args) {
         if (args.get(1).type().equals(NodeType.LIST)) {
-            List resultList = new List();
-            resultList.addChild(args.get(0));
-            resultList.addChildren(args.get(1).getChildren());
-            return Optional.of(resultList);
+            return Optional.of(args.get(1).toList().fput(args.get(0)));
         } else if (args.get(1).type().equals(NodeType.QUOTE)) {
 			String resultString = args.get(0).toQuotedWord().getQuote() + args.get(1).toQuotedWord().getQuote();
             return Optional.of(new QuotedWord(resultString));
@@ -72,10 +64,7 @@ public class Data implements ProcedureProvider {
 
     public Optional<Node> lput(Interpreter interpreter, java.util.List<Node> args) {
         if (args.get(1).type().equals(NodeType.LIST)) {
-            List resultList = new List();
-            resultList.addChildren(args.get(1).getChildren());
-            resultList.addChild(args.get(0));
-            return Optional.of(resultList);
+            return Optional.of(args.get(1).toList().lput(args.get(0)));
         } else if (args.get(1).type().equals(NodeType.QUOTE)) {
 			String resultString = args.get(1).toQuotedWord().getQuote() + args.get(0).toQuotedWord().getQuote();
             return Optional.of(new QuotedWord(resultString));
@@ -87,6 +76,44 @@ public class Data implements ProcedureProvider {
         }
     }
 
+    public Optional<Node> array(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(new Array(integer(args.get(0))));
+    }
+
+    public Optional<Node> mdarray(Interpreter interpreter, java.util.List<Node> args) {
+        Node sizes = args.get(0);
+
+        if (!sizes.type().equals(NodeType.LIST)) {
+            throw new NodeTypeException(sizes, sizes.type(), NodeType.LIST);
+        }
+
+        return Optional.of(mdarray(sizes.getChildren(), 0));
+    }
+
+    private Array mdarray(java.util.List<Node> sizes, int dimension) {
+        Array array = new Array(integer(sizes.get(dimension)));
+        if (dimension < sizes.size() - 1) {
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, mdarray(sizes, dimension + 1));
+            }
+        }
+        return array;
+    }
+
+    public Optional<Node> listtoarray(Interpreter interpreter, java.util.List<Node> args) {
+        Node list = args.get(0);
+
+        if (!list.type().equals(NodeType.LIST)) {
+            throw new NodeTypeException(list, list.type(), NodeType.LIST);
+        }
+
+        return Optional.of(new Array(list.getChildren()));
+    }
+
+    public Optional<Node> arraytolist(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(new List(args.get(0).toArray().getChildren()));
+    }
+
     public Optional<Node> word(Interpreter interpreter, java.util.List<Node> args) {
         StringBuilder concatenated = new StringBuilder();
 
@@ -123,9 +150,7 @@ public class Data implements ProcedureProvider {
     }
 
     public Optional<Node> sentence(Interpreter interpreter, java.util.List<Node> args) {
-        List list = new List();
-        list.addChildren(flatten(args).get());
-        return Optional.of(list);
+        return Optional.of(new List(flatten(args).get()));
     }
 
     private Optional<java.util.List<Node>> flatten(java.util.List<Node> list) {
@@ -166,7 +191,7 @@ public class Data implements ProcedureProvider {
 
         switch (args.get(0).type()) {
             case LIST:
-                first = first.getChildren().get(0);
+                first = first.toList().first();
                 break;
             case QUOTE:
                 first = new QuotedWord(first.toQuotedWord().toString().substring(0, 1));
@@ -187,7 +212,7 @@ public class Data implements ProcedureProvider {
 
         switch (args.get(0).type()) {
             case LIST:
-                last = last.getChildren().get(last.getChildren().size() - 1);
+                last = last.toList().last();
                 break;
             case QUOTE:
                 last = new QuotedWord(last.toQuotedWord().toString().substring(
@@ -212,8 +237,7 @@ public class Data implements ProcedureProvider {
 
         switch (args.get(0).type()) {
             case LIST:
-                butfirst = new List();
-                butfirst.addChildren(args.get(0).getChildren().subList(1, args.get(0).getChildren().size()));
+                butfirst = args.get(0).toList().butfirst();
                 break;
             case QUOTE:
                 butfirst = new QuotedWord(args.get(0).toQuotedWord().toString().substring(1));
@@ -234,8 +258,7 @@ public class Data implements ProcedureProvider {
 
         switch (args.get(0).type()) {
             case LIST:
-                butlast = new List();
-                butlast.addChildren(args.get(0).getChildren().subList(0, args.get(0).getChildren().size() - 1));
+                butlast = args.get(0).toList().butlast();
                 break;
             case QUOTE:
                 butlast = new QuotedWord(args.get(0).toQuotedWord().toString().substring(
@@ -265,7 +288,10 @@ public class Data implements ProcedureProvider {
 
         switch (args.get(1).type()) {
             case LIST:
-                item = args.get(1).getChildren().get(index.toIntegerWord().getInteger() - 1);
+                item = args.get(1).toList().item(index.toIntegerWord().getInteger() - 1);
+                break;
+            case ARRAY:
+                item = args.get(1).toArray().get(index.toIntegerWord().getInteger() - 1);
                 break;
             case QUOTE:
                 item = new QuotedWord(String.valueOf(
@@ -296,23 +322,77 @@ public class Data implements ProcedureProvider {
             throw new NodeTypeException(index, index.type(), NodeType.INTEGER);
         }
 
-        if (!list.type().equals(NodeType.LIST)) {
-            throw new NodeTypeException(list, list.type(), NodeType.LIST);
+        if (list.type().equals(NodeType.ARRAY)) {
+            list.toArray().set(index.toIntegerWord().getInteger() - 1, newVal);
+        } else if (list.type().equals(NodeType.LIST)) {
+            list.getChildren().set(index.toIntegerWord().getInteger() - 1, newVal);
+        } else {
+            throw new NodeTypeException(list, list.type(), NodeType.LIST, NodeType.ARRAY);
         }
 
-        list.getChildren().set(index.toIntegerWord().getInteger() - 1, newVal);
-
         return Optional.of(list);
     }
 
+    public Optional<Node> mditem(Interpreter interpreter, java.util.List<Node> args) {
+        java.util.List<Node> indexes = indexes(args.get(0));
+        Node item = args.get(1);
+
+        for (Node index : indexes) {
+            item = item.toArray().get(integer(index) - 1);
+        }
+
+        return Optional.of(item);
+    }
+
+    public Optional<Node> mdsetitem(Interpreter interpreter, java.util.List<Node> args) {
+        java.util.List<Node> indexes = indexes(args.get(0));
+        Node array = args.get(1);
+        Node newVal = args.get(2);
+
+        Node target = array;
+        for (int i = 0; i < indexes.size() - 1; i++) {
+            target = target.toArray().get(integer(indexes.get(i)) - 1);
+        }
+        target.toArray().set(integer(indexes.get(indexes.size() - 1)) - 1, newVal);
+
+        return Optional.of(array);
+    }
+
+    private static java.util.List<Node> indexes(Node indexes) {
+        if (!indexes.type().equals(NodeType.LIST)) {
+            throw new NodeTypeException(indexes, indexes.type(), NodeType.LIST);
+        }
+        if (indexes.getChildren().isEmpty()) {
+            throw new NodeTypeException(indexes, indexes.type(), NodeType.INTEGER);
+        }
+        return indexes.getChildren();
+    }
+
+    /**
+     * An integer argument, also accepted as symbol, e.g. from a literal list.
+     */
+    private static int integer(Node node) {
+        if (node.type().equals(NodeType.INTEGER)) {
+            return node.toIntegerWord().getInteger();
+        }
+        if (node.type().equals(NodeType.SYMBOL)) {
+            try {
+                return Integer.parseInt(node.toSymbolWord().getSymbol());
+            } catch (NumberFormatException e) {
+                // Not a number, fails below
+            }
+        }
+        throw new NodeTypeException(node, node.type(), NodeType.INTEGER);
+    }
+
     // Predicates
     public Optional<Node> emptyp(Interpreter interpreter, java.util.List<Node> args) {
 
         Node list = args.get(0);
-        Node empty = new BooleanWord(Boolean.FALSE);
+        Node empty = Node.bool(false);
 
         if (list.type().equals(NodeType.LIST) && list.getChildren().isEmpty()) {
-            empty = new BooleanWord(Boolean.TRUE);
+            empty = Node.bool(true);
         }
 
         return Optional.of(empty);
@@ -321,10 +401,10 @@ public class Data implements ProcedureProvider {
     public Optional<Node> wordp(Interpreter interpreter, java.util.List<Node> args) {
 
         Node word = args.get(0);
-        Node wordp = new BooleanWord(Boolean.FALSE);
+        Node wordp = Node.bool(false);
 
         if (word.type().equals(NodeType.QUOTE) || word.type().equals(NodeType.SYMBOL) || word.type().equals(NodeType.INTEGER) || word.type().equals(NodeType.FLOAT)) {
-            wordp = new BooleanWord(Boolean.TRUE);
+            wordp = Node.bool(true);
         }
 
         return Optional.of(wordp);
@@ -333,10 +413,10 @@ public class Data implements ProcedureProvider {
     public Optional<Node> numberp(Interpreter interpreter, java.util.List<Node> args) {
 
         Node word = args.get(0);
-        Node wordp = new BooleanWord(Boolean.FALSE);
+        Node wordp = Node.bool(false);
 
         if (word.type().equals(NodeType.INTEGER) || word.type().equals(NodeType.FLOAT)) {
-            wordp = new BooleanWord(Boolean.TRUE);
+            wordp = Node.bool(true);
         }
 
         return Optional.of(wordp);
@@ -345,21 +425,25 @@ public class Data implements ProcedureProvider {
     public Optional<Node> listp(Interpreter interpreter, java.util.List<Node> args) {
 
         Node list = args.get(0);
-        Node listp = new BooleanWord(Boolean.FALSE);
+        Node listp = Node.bool(false);
 
         if (list.type().equals(NodeType.LIST)) {
-            listp = new BooleanWord(Boolean.TRUE);
+            listp = Node.bool(true);
         }
 
         return Optional.of(listp);
     }
 
+    public Optional<Node> arrayp(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(Node.bool(args.get(0).type().equals(NodeType.ARRAY)));
+    }
+
     public Optional<Node> equalp(Interpreter interpreter, java.util.List<Node> args) {
 
         Node fst = args.get(0);
         Node snd = args.get(1);
 
-		return Optional.of(new BooleanWord(fst.equals(snd)));
+		return Optional.of(Node.bool(fst.equals(snd)));
     }
 
     public Optional<Node> memberp(Interpreter interpreter, java.util.List<Node> args) {
@@ -367,22 +451,19 @@ public class Data implements ProcedureProvider {
         Node member = args.get(0);
         Node list = args.get(1);
 
-        Node result = Word.bool(false);
-
         if (!list.type().equals(NodeType.LIST)) {
             throw new NodeTypeException(list, list.type(), NodeType.LIST);
         }
 
+        // Elements with another hash are not compared at all
+        int hash = member.hashCode();
         for (Node lm : list.getChildren()) {
-            if (lm.hashCode() == member.hashCode()) {
-                java.util.List<Node> subArgs = new ArrayList<>();
-                subArgs.add(member);
-                subArgs.add(lm);
-                result = equalp(interpreter, subArgs).get();
+            if (lm.hashCode() == hash && member.equals(lm)) {
+                return Optional.of(Node.bool(true));
             }
         }
 
-        return Optional.ofNullable(result.toBooleanWord());
+        return Optional.of(Node.bool(false));
     }
 
     // Queries
@@ -391,7 +472,11 @@ public class Data implements ProcedureProvider {
         Node element = args.get(0);
 
         if (element.type().equals(NodeType.LIST)) {
-            return Optional.of(Node.integer(element.getChildren().size()));
+            return Optional.of(Node.integer(element.toList().size()));
+        }
+
+        if (element.type().equals(NodeType.ARRAY)) {
+            return Optional.of(Node.integer(element.toArray().size()));
         }
 
         if (element.type().equals(NodeType.QUOTE)) {
@@ -466,7 +551,10 @@ public class Data implements ProcedureProvider {
         it.env().define(new Procedure("number?", this::numberp, "__number__"));
         it.env().define(new Procedure("word?", this::wordp, "__word__"));
         it.env().define(new Procedure("empty?", this::emptyp, "__list__"));
+        it.env().define(new Procedure("array?", this::arrayp, "__array__"));
         it.env().define(new Procedure("setitem", this::setitem, "__index__", "__list__", "__newval__"));
+        it.env().define(new Procedure("mdsetitem", this::mdsetitem, "__indexes__", "__array__", "__newval__"));
+        it.env().define(new Procedure("mditem", this::mditem, "__indexes__", "__array__"));
         it.env().define(new Procedure("item", this::item, "__index__", "__listorword__"));
         it.env().define(new Procedure("butlast", this::butlast, "__listorword__"));
         it.env().define(new Procedure("butfirst", this::butfirst, "__listorword__"));
@@ -475,6 +563,10 @@ public class Data implements ProcedureProvider {
         it.env().define(new Procedure("reverse", this::reverse, "__list__"));
         it.env().define(new Procedure("fput", this::fput, "__fst__", "__snd__"));
         it.env().define(new Procedure("lput", this::lput, "__fst__", "__snd__"));
+        it.env().define(new Procedure("array", this::array, "__size__"));
+        it.env().define(new Procedure("mdarray", this::mdarray, "__sizes__"));
+        it.env().define(new Procedure("listtoarray", this::listtoarray, "__list__"));
+        it.env().define(new Procedure("arraytolist", this::arraytolist, "__array__"));
         it.env().define(new Procedure("word", this::word, "__fst__", "__snd__"));
         it.env().define(new Procedure("list", this::list, "__fst__", "__snd__"));
         it.env().define(new Procedure("sentence", this::sentence, "__fst__", "__snd__"));
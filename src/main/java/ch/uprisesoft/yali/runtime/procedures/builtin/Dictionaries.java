@@ -0,0 +1,132 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.procedures.builtin;
+
+import ch.uprisesoft.yali.ast.node.Dictionary;
+import ch.uprisesoft.yali.ast.node.List;
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
+import ch.uprisesoft.yali.runtime.procedures.ProcedureProvider;
+import java.util.Optional;
+
+/**
+ * Dictionaries and property lists. A dictionary is a value like a list,
+ * property lists are dictionaries known by a global name, see
+ * https://people.eecs.berkeley.edu/~bh/v2ch14/manual.html for pprop, gprop,
+ * remprop and plist.
+ *
+ * Missing keys and properties read as empty list. The property lists are
+ * shared by interpreters forked for pmap and the like, so they are only
+ * used while holding the lock of this provider.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class Dictionaries implements ProcedureProvider {
+
+    private final Dictionary plists = new Dictionary();
+
+    public Optional<Node> dict(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(new Dictionary());
+    }
+
+    public Optional<Node> dput(Interpreter interpreter, java.util.List<Node> args) {
+        Dictionary dict = args.get(0).toDictionary();
+        dict.put(args.get(1), args.get(2));
+        return Optional.of(dict);
+    }
+
+    public Optional<Node> dget(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(orEmpty(args.get(0).toDictionary().get(args.get(1))));
+    }
+
+    public Optional<Node> dremove(Interpreter interpreter, java.util.List<Node> args) {
+        Dictionary dict = args.get(0).toDictionary();
+        dict.remove(args.get(1));
+        return Optional.of(dict);
+    }
+
+    public Optional<Node> dkeys(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(new List(args.get(0).toDictionary().keys()));
+    }
+
+    public Optional<Node> dkeyp(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(Node.bool(args.get(0).toDictionary().containsKey(args.get(1))));
+    }
+
+    public Optional<Node> dictp(Interpreter interpreter, java.util.List<Node> args) {
+        return Optional.of(Node.bool(args.get(0).type().equals(NodeType.DICTIONARY)));
+    }
+
+    public synchronized Optional<Node> pprop(Interpreter interpreter, java.util.List<Node> args) {
+        Node plist = plists.get(args.get(0));
+        if (plist == null) {
+            plist = new Dictionary();
+            plists.put(args.get(0), plist);
+        }
+        plist.toDictionary().put(args.get(1), args.get(2));
+        return Optional.of(Node.nil());
+    }
+
+    public synchronized Optional<Node> gprop(Interpreter interpreter, java.util.List<Node> args) {
+        Node plist = plists.get(args.get(0));
+        if (plist == null) {
+            return Optional.of(new List());
+        }
+        return Optional.of(orEmpty(plist.toDictionary().get(args.get(1))));
+    }
+
+    public synchronized Optional<Node> remprop(Interpreter interpreter, java.util.List<Node> args) {
+        Node plist = plists.get(args.get(0));
+        if (plist != null) {
+            plist.toDictionary().remove(args.get(1));
+            if (plist.toDictionary().size() == 0) {
+                plists.remove(args.get(0));
+            }
+        }
+        return Optional.of(Node.nil());
+    }
+
+    public synchronized Optional<Node> plist(Interpreter interpreter, java.util.List<Node> args) {
+        Node plist = plists.get(args.get(0));
+        if (plist == null) {
+            return Optional.of(new List());
+        }
+        return Optional.of(new List(plist.getChildren()));
+    }
+
+    private static Node orEmpty(Node value) {
+        return value == null ? new List() : value;
+    }
+
+    @Override
+    public Interpreter registerProcedures(Interpreter it) {
+        it.env().define(new Procedure("dict", this::dict));
+        it.env().define(new Procedure("dput", this::dput, "__dict__", "__key__", "__value__"));
+        it.env().define(new Procedure("dget", this::dget, "__dict__", "__key__"));
+        it.env().define(new Procedure("dremove", this::dremove, "__dict__", "__key__"));
+        it.env().define(new Procedure("dkeys", this::dkeys, "__dict__"));
+        it.env().define(new Procedure("dkey?", this::dkeyp, "__dict__", "__key__"));
+        it.env().define(new Procedure("dict?", this::dictp, "__dict__"));
+        it.env().define(new Procedure("pprop", this::pprop, "__plist__", "__prop__", "__value__"));
+        it.env().define(new Procedure("gprop", this::gprop, "__plist__", "__prop__"));
+        it.env().define(new Procedure("remprop", this::remprop, "__plist__", "__prop__"));
+        it.env().define(new Procedure("plist", this::plist, "__plist__"));
+
+        return it;
+    }
+}
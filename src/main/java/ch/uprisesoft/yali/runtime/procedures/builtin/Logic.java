@@ -19,6 +19,7 @@ import ch.uprisesoft.yali.ast.node.Node;
 import ch.uprisesoft.yali.ast.node.NodeType;
 import ch.uprisesoft.yali.ast.node.Procedure;
 import ch.uprisesoft.yali.ast.node.word.BooleanWord;
+import ch.uprisesoft.yali.ast.node.word.IntegerWord;
 import ch.uprisesoft.yali.ast.node.word.Word;
 import ch.uprisesoft.yali.exception.NodeTypeException;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
@@ -32,116 +33,98 @@ import java.util.Optional;
  */
 public class Logic implements ProcedureProvider {
 
+    private static boolean number(Node node) {
+        return node.type() == NodeType.INTEGER || node.type() == NodeType.FLOAT;
+    }
+
+    private static boolean integers(Word left, Word right) {
+        return left.type() == NodeType.INTEGER && right.type() == NodeType.INTEGER;
+    }
+
+    private static int compare(Word left, Word right) {
+        return ((IntegerWord) left).compareTo((IntegerWord) right);
+    }
+
     public Optional<Node> equal(Interpreter interpreter, java.util.List<Node> args) {
         Word left = (Word) args.get(0);
         Word right = (Word) args.get(1);
 
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(Word.bool(left.getInteger().equals(right.getInteger())));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(Word.bool(left.getFloat().equals(right.getFloat())));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(Word.bool(Double.valueOf(left.getInteger().toString()).equals(right.getFloat())));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(Word.bool(left.getFloat().equals(Double.valueOf(right.getInteger().toString()))));
+        if (number(left) && number(right)) {
+            if (integers(left, right)) {
+                return Optional.of(Node.bool(compare(left, right) == 0));
+            }
+            return Optional.of(Node.bool(Double.compare(left.doubleValue(), right.doubleValue()) == 0));
         } else if (left.type().equals(NodeType.QUOTE) && right.type().equals(NodeType.QUOTE)) {
-            return Optional.of(Word.bool(left.getQuote().equals(right.getQuote())));
+            return Optional.of(Node.bool(left.getQuote().equals(right.getQuote())));
         } else if (left.type().equals(NodeType.SYMBOL) && right.type().equals(NodeType.SYMBOL)) {
-            return Optional.of(Word.bool(left.getSymbol().equals(right.getSymbol())));
+            return Optional.of(Node.bool(left.getSymbol().equals(right.getSymbol())));
         } else if (left.type().equals(NodeType.BOOLEAN) && right.type().equals(NodeType.BOOLEAN)) {
-            return Optional.of(Word.bool(left.getBoolean().equals(right.getBoolean())));
+            return Optional.of(Node.bool(left.getBoolean().equals(right.getBoolean())));
         }
 
-        return Optional.of(Word.bool(Boolean.FALSE));
+        return Optional.of(Node.bool(false));
     }
 
     public Optional<Node> inequal(Interpreter interpreter, java.util.List<Node> args) {
         Node result = equal(interpreter, args).get();
-        if (result.toBooleanWord().getBoolean()) {
-            return Optional.of(new BooleanWord(Boolean.FALSE));
-        } else {
-            return Optional.of(new BooleanWord(Boolean.TRUE));
-        }
+        return Optional.of(Node.bool(result == BooleanWord.FALSE));
     }
 
     public Optional<Node> greater(Interpreter interpreter, java.util.List<Node> args) {
         Word left = (Word) args.get(0);
         Word right = (Word) args.get(1);
         
-        if(!(left.type().equals(NodeType.FLOAT) || left.type().equals(NodeType.INTEGER))) {
+        if(!number(left)) {
             throw new NodeTypeException(Node.symbol("greater?"), left.type(), NodeType.NUMBER);
         }
         
-        if(!(right.type().equals(NodeType.FLOAT) || right.type().equals(NodeType.INTEGER))) {
+        if(!number(right)) {
             throw new NodeTypeException(Node.symbol("greater?"), right.type(), NodeType.NUMBER);
         }
 
-        Word result = Node.bool(Boolean.FALSE);
-
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            result = Word.bool(left.getInteger() > right.getInteger());
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            result = Word.bool(left.getFloat() > right.getFloat());
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            result = Word.bool(left.getInteger() > right.getFloat());
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            result = Word.bool(left.getFloat() > right.getInteger());
+        if (integers(left, right)) {
+            return Optional.of(Node.bool(compare(left, right) > 0));
         }
-
-        return Optional.of(result);
+        return Optional.of(Node.bool(left.doubleValue() > right.doubleValue()));
     }
 
     public Optional<Node> less(Interpreter interpreter, java.util.List<Node> args) {
         Word left = (Word) args.get(0);
         Word right = (Word) args.get(1);
 
-        Word result = Node.bool(Boolean.FALSE);
-
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            result = Word.bool(left.getInteger() < right.getInteger());
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            result = Word.bool(left.getFloat() < right.getFloat());
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            result = Word.bool(left.getInteger() < right.getFloat());
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            result = Word.bool(left.getFloat() < right.getInteger());
+        if (!number(left) || !number(right)) {
+            return Optional.of(Node.bool(false));
         }
-
-        return Optional.of(result);
+        if (integers(left, right)) {
+            return Optional.of(Node.bool(compare(left, right) < 0));
+        }
+        return Optional.of(Node.bool(left.doubleValue() < right.doubleValue()));
     }
 
     public Optional<Node> greaterorequal(Interpreter interpreter, java.util.List<Node> args) {
         Word left = (Word) args.get(0);
         Word right = (Word) args.get(1);
 
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(Word.bool(left.getInteger() >= right.getInteger()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(Word.bool(left.getFloat() >= right.getFloat()));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(Word.bool(left.getInteger() >= right.getFloat()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(Word.bool(left.getFloat() >= right.getInteger()));
+        if (!number(left) || !number(right)) {
+            return Optional.of(Node.bool(false));
         }
-
-        return Optional.of(Word.bool(Boolean.FALSE));
+        if (integers(left, right)) {
+            return Optional.of(Node.bool(compare(left, right) >= 0));
+        }
+        return Optional.of(Node.bool(left.doubleValue() >= right.doubleValue()));
     }
 
     public Optional<Node> lessorequal(Interpreter interpreter, java.util.List<Node> args) {
         Word left = (Word) args.get(0);
         Word right = (Word) args.get(1);
 
-        if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(Word.bool(left.getInteger() <= right.getInteger()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(Word.bool(left.getFloat() <= right.getFloat()));
-        } else if (left.type().equals(NodeType.INTEGER) && right.type().equals(NodeType.FLOAT)) {
-            return Optional.of(Word.bool(left.getInteger() <= right.getFloat()));
-        } else if (left.type().equals(NodeType.FLOAT) && right.type().equals(NodeType.INTEGER)) {
-            return Optional.of(Word.bool(left.getFloat() <= right.getInteger()));
+        if (!number(left) || !number(right)) {
+            return Optional.of(Node.bool(false));
         }
-
-        return Optional.of(Word.bool(Boolean.FALSE));
+        if (integers(left, right)) {
+            return Optional.of(Node.bool(compare(left, right) <= 0));
+        }
+        return Optional.of(Node.bool(left.doubleValue() <= right.doubleValue()));
     }
 
     @Override
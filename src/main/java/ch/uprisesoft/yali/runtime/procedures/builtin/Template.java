@@ -17,233 +17,211 @@ package ch.uprisesoft.yali.runtime.procedures.builtin;
 
 import ch.uprisesoft.yali.ast.node.*;
 import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.runtime.interpreter.Frame;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
 import java.util.ArrayList;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import ch.uprisesoft.yali.runtime.procedures.ProcedureProvider;
 
 /**
+ * Procedures applying a template to every element of a list or every
+ * character of a word. The template is parsed once, then the element is put
+ * in place of every ? in the parsed calls before they are run. The state of
+ * a call is kept in its frame, so templates can be nested and used in
+ * recursive procedures. In reduce, ?1 is the result so far and ?2 the next
+ * element.
+ *
+ * The parallel versions pmap, pfilter and preduce split a list in chunks and
+ * run the sequential version on every chunk in a forked interpreter. Forks
+ * only see the global scope, so a template must not depend on local
+ * variables of its caller and must not change global variables. preduce
+ * combines the results of the chunks again, so the template has to be
+ * associative.
  *
  * @author uprisesoft@gmail.com
  */
 public class Template implements ProcedureProvider {
 
-    private Node mapTemplate = Node.none();
-    private final java.util.List<Node> mapResults = new ArrayList<>();
-    private java.util.List<Node> mapValues = new ArrayList<>();
-    private boolean mapIsList = false;
-    private boolean mapRunning = false;
+    // Chunks per worker thread of the parallel procedures, more chunks than
+    // threads even out the load if elements take different time
+    private static final int CHUNKS_PER_THREAD = 4;
+
 
     public Optional<Node> map(Interpreter interpreter, java.util.List<Node> args) {
-        if (interpreter.env().peek().thingable("__last_map_result__")) {
-            Node res = interpreter.env().peek().thing("__last_map_result__");
-            mapResults.add(res);
-            interpreter.env().peek().unmake("__last_map_result__");
-        }
+        Run run = start(interpreter, args);
 
-        if (mapRunning && mapValues.isEmpty()) {
-            mapRunning = false;
-            return Optional.of(mapResult(interpreter));
+        while (!run.finished()) {
+            if (!run.step(interpreter)) {
+                return Optional.empty();
+            }
+            run.results.add(run.result);
+            run.advance();
         }
 
-        if (!mapRunning) {
-            if (args.get(0).type().equals(NodeType.LIST)) {
-                mapTemplate = args.get(0).toList();
-            } else {
-                throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.LIST);
-            }
+        return Optional.of(run.collect());
+    }
 
-            if (args.get(1).type().equals(NodeType.LIST)) {
-                mapValues = args.get(1).toList().getChildren();
-                mapIsList = true;
-            } else if (args.get(1).type().equals(NodeType.QUOTE)) {
-                String valueChars = args.get(1).toQuotedWord().getQuote();
-                for (int i = 0; i < valueChars.length(); i++) {
-                    mapValues.add(Node.symbol(String.valueOf(valueChars.charAt(i))));
-                }
-                mapIsList = false;
-            } else {
-                throw new NodeTypeException(args.get(1), args.get(1).type(), NodeType.LIST, NodeType.QUOTE);
-            }
-            mapRunning = true;
-        }
+    public Optional<Node> filter(Interpreter interpreter, java.util.List<Node> args) {
+        Run run = start(interpreter, args);
 
-        Node val = mapValues.remove(0);
-        java.util.List<Node> realizedValues = new ArrayList<>();
-        for (Node n : mapTemplate.getChildren()) {
-            if (n.type().equals(NodeType.SYMBOL) && n.toSymbolWord().getSymbol().equals("?")) {
-                realizedValues.add(val);
-            } else {
-                realizedValues.add(n);
+        while (!run.finished()) {
+            if (!run.step(interpreter)) {
+                return Optional.empty();
+            }
+            if (isTrue(run.result)) {
+                run.results.add(run.value());
             }
+            run.advance();
         }
 
-        String realizedString = Node.list(realizedValues).toString().substring(1, Node.list(realizedValues).toString().length() - 1);
-        Call c = interpreter.read("make \"__last_map_result__ " + realizedString).getChildren().get(0).toProcedureCall();
-        interpreter.schedule(c);
-
-        return Optional.empty();
+        return Optional.of(run.collect());
     }
 
-    private Node mapResult(Interpreter it) {
-        if (mapIsList) {
-            return Node.list(mapResults);
-        } else {
-            StringBuilder result = new StringBuilder();
+    public Optional<Node> find(Interpreter interpreter, java.util.List<Node> args) {
+        Run run = start(interpreter, args);
 
-            for (Node r : mapResults) {
-                result.append(r.toString());
+        while (!run.finished()) {
+            if (!run.step(interpreter)) {
+                return Optional.empty();
             }
-            it.output(Node.quote(result.toString()));
-            return Node.quote(result.toString());
+            if (isTrue(run.result)) {
+                return Optional.of(run.value());
+            }
+            run.advance();
         }
+
+        return Optional.of(Node.none());
     }
 
-    private Node filterTemplate = Node.none();
-    private final java.util.List<Node> filterResults = new ArrayList<>();
-    private java.util.List<Node> filterValues = new ArrayList<>();
-    private boolean filterIsList = false;
-    private boolean filterRunning = false;
+    public Optional<Node> reduce(Interpreter interpreter, java.util.List<Node> args) {
+        Run run = start(interpreter, args);
 
-    public Optional<Node> filter(Interpreter interpreter, java.util.List<Node> args) {
-        if (interpreter.env().peek().thingable("__last_filter_result__")) {
-            Node res = interpreter.env().peek().thing("__last_filter_result__");
-            if (res.type().equals(NodeType.BOOLEAN) && res.toBooleanWord().getBoolean() == true) {
-                filterResults.add(filterValues.get(0));
+        if (run.accumulator == null) {
+            if (run.finished()) {
+                return Optional.of(Node.none());
             }
-            filterValues.remove(0);
-            interpreter.env().peek().unmake("__last_filter_result__");
+            run.accumulator = run.value();
+            run.advance();
         }
 
-        if (filterRunning && filterValues.isEmpty()) {
-            filterRunning = false;
-            return Optional.ofNullable(filterResult(interpreter));
+        while (!run.finished()) {
+            if (!run.step(interpreter)) {
+                return Optional.empty();
+            }
+            run.accumulator = run.result;
+            run.advance();
         }
 
-        if (!filterRunning) {
-            if (args.get(0).type().equals(NodeType.LIST)) {
-                filterTemplate = args.get(0).toList();
-            } else {
-                throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.LIST);
-            }
+        return Optional.of(run.accumulator);
+    }
 
-            if (args.get(1).type().equals(NodeType.LIST)) {
-                filterValues = args.get(1).toList().getChildren();
-                filterIsList = true;
-            } else if (args.get(1).type().equals(NodeType.QUOTE)) {
-                String valueChars = args.get(1).toQuotedWord().getQuote();
-                for (int i = 0; i < valueChars.length(); i++) {
-                    filterValues.add(Node.symbol(String.valueOf(valueChars.charAt(i))));
-                }
-                filterIsList = false;
-            } else {
-                throw new NodeTypeException(args.get(1), args.get(1).type(), NodeType.LIST, NodeType.QUOTE);
-            }
-            filterRunning = true;
+    public Optional<Node> pmap(Interpreter interpreter, java.util.List<Node> args) {
+        java.util.List<Node> results = new ArrayList<>();
+        for (Node chunk : parallel(interpreter, "map", args)) {
+            results.addAll(chunk.getChildren());
         }
+        return Optional.of(new List(results));
+    }
 
-        Node val = filterValues.get(0);
-        java.util.List<Node> realizedValues = new ArrayList<>();
-        for (Node n : filterTemplate.getChildren()) {
-            if (n.type().equals(NodeType.SYMBOL) && n.toSymbolWord().getSymbol().equals("?")) {
-                realizedValues.add(val);
-            } else {
-                realizedValues.add(n);
-            }
+    public Optional<Node> pfilter(Interpreter interpreter, java.util.List<Node> args) {
+        java.util.List<Node> results = new ArrayList<>();
+        for (Node chunk : parallel(interpreter, "filter", args)) {
+            results.addAll(chunk.getChildren());
         }
+        return Optional.of(new List(results));
+    }
+
+    public Optional<Node> preduce(Interpreter interpreter, java.util.List<Node> args) {
+        java.util.List<Node> results = parallel(interpreter, "reduce", args);
 
-        String realizedString = Node.list(realizedValues).toString().substring(1, Node.list(realizedValues).toString().length() - 1);
-        Call c = interpreter.read("make \"__last_filter_result__ " + realizedString).getChildren().get(0).toProcedureCall();
-        interpreter.schedule(c);
+        if (results.isEmpty()) {
+            return Optional.of(Node.none());
+        } else if (results.size() == 1) {
+            return Optional.of(results.get(0));
+        }
 
-        return Optional.empty();
+        return Optional.of(interpreter.fork().run(call("reduce", args.get(0), new List(results))));
     }
 
-    private Node filterResult(Interpreter it) {
-        if (filterIsList) {
-            return Node.list(filterResults);
-        } else {
-            StringBuilder result = new StringBuilder();
+    /**
+     * Runs a template procedure on chunks of a list in parallel and returns
+     * the results of the chunks in order.
+     */
+    private static java.util.List<Node> parallel(Interpreter interpreter, String name, java.util.List<Node> args) {
+        Node template = args.get(0);
+        Node values = args.get(1);
 
-            for (Node r : filterResults) {
-                result.append(r.toString());
-            }
-            it.output(Node.quote(result.toString()));
-            return Node.quote(result.toString());
+        if (!template.type().equals(NodeType.LIST)) {
+            throw new NodeTypeException(template, template.type(), NodeType.LIST);
         }
-    }
 
-    private Node findTemplate = Node.none();
-    private Node potentialFindResult = Node.nil();
-    private java.util.List<Node> findValues = new ArrayList<>();
-    private boolean findIsList = false;
-    private boolean findRunning = false;
+        if (!values.type().equals(NodeType.LIST)) {
+            throw new NodeTypeException(values, values.type(), NodeType.LIST);
+        }
 
-    public Optional<Node> find(Interpreter interpreter, java.util.List<Node> args) {
-        if (interpreter.env().peek().thingable("__last_find_result__")) {
-            Node res = interpreter.env().peek().thing("__last_find_result__");
-            if (res.type().equals(NodeType.BOOLEAN) && res.toBooleanWord().getBoolean() == true) {
-                Node val = interpreter.env().peek().thing("__last_find_result__");
-                interpreter.env().peek().unmake("__last_find_result__");
-                findRunning = false;
-                findIsList = false;
-                findValues.clear();
-                findTemplate = Node.none();
-                System.out.println("Found value: " + potentialFindResult);
-                return Optional.of(potentialFindResult);
-            }
-            findValues.remove(0);
-            interpreter.env().peek().unmake("__last_find_result__");
+        java.util.List<Node> items = values.getChildren();
+        int chunks = Math.min(items.size(), ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD);
+
+        java.util.List<ForkJoinTask<Node>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int from = (int) ((long) items.size() * i / chunks);
+            int to = (int) ((long) items.size() * (i + 1) / chunks);
+            Call call = call(name, template, new List(items.subList(from, to)));
+            Interpreter fork = interpreter.fork();
+            tasks.add(ForkJoinPool.commonPool().submit(() -> fork.run(call)));
         }
 
-        if (findRunning && findValues.isEmpty()) {
-            findRunning = false;
-            return Optional.of(Node.none());
+        java.util.List<Node> results = new ArrayList<>(chunks);
+        for (ForkJoinTask<Node> task : tasks) {
+            results.add(task.join());
         }
+        return results;
+    }
 
-        if (!findRunning) {
-            if (args.get(0).type().equals(NodeType.LIST)) {
-                findTemplate = args.get(0).toList();
-            } else {
-                throw new NodeTypeException(args.get(0), args.get(0).type(), NodeType.LIST);
+    private static Call call(String name, Node template, Node values) {
+        Call call = new Call(name);
+        call.addChild(template);
+        call.addChild(values);
+        return call;
+    }
+
+    private static boolean isTrue(Node result) {
+        return result.type().equals(NodeType.BOOLEAN) && result.toBooleanWord().getBoolean();
+    }
+
+    /**
+     * The run of this call, started when the procedure is called the first
+     * time.
+     */
+    private static Run start(Interpreter interpreter, java.util.List<Node> args) {
+        Frame frame = interpreter.frame();
+
+        if (frame.state() == null) {
+            Node template = args.get(0);
+            Node values = args.get(1);
+
+            if (!template.type().equals(NodeType.LIST)) {
+                throw new NodeTypeException(template, template.type(), NodeType.LIST);
             }
 
-            if (args.get(1).type().equals(NodeType.LIST)) {
-                findValues = args.get(1).toList().getChildren();
-                findIsList = true;
-            } else if (args.get(1).type().equals(NodeType.QUOTE)) {
-                String valueChars = args.get(1).toQuotedWord().getQuote();
+            if (values.type().equals(NodeType.LIST)) {
+                frame.state(new Run(interpreter.read(template.toList()), values.getChildren(), true));
+            } else if (values.type().equals(NodeType.QUOTE)) {
+                String valueChars = values.toQuotedWord().getQuote();
+                java.util.List<Node> chars = new ArrayList<>(valueChars.length());
                 for (int i = 0; i < valueChars.length(); i++) {
-                    findValues.add(
-                            Node.symbol(
-                                    String.valueOf(valueChars.charAt(i))
-                            )
-                    );
+                    chars.add(Node.symbol(String.valueOf(valueChars.charAt(i))));
                 }
-                findIsList = false;
+                frame.state(new Run(interpreter.read(template.toList()), chars, false));
             } else {
-                throw new NodeTypeException(args.get(1), args.get(1).type(), NodeType.LIST, NodeType.QUOTE);
+                throw new NodeTypeException(values, values.type(), NodeType.LIST, NodeType.QUOTE);
             }
-            findRunning = true;
         }
 
-        Node val = findValues.get(0);
-        java.util.List<Node> realizedValues = new ArrayList<>();
-        for (Node n : findTemplate.getChildren()) {
-            if (n.type().equals(NodeType.SYMBOL) && n.toSymbolWord().getSymbol().equals("?")) {
-                potentialFindResult = val;
-                realizedValues.add(val);
-            } else {
-                realizedValues.add(n);
-            }
-        }
-
-        String realizedString = Node.list(realizedValues).toString().substring(1, Node.list(realizedValues).toString().length() - 1);
-        Call c = interpreter.read("make \"__last_find_result__ " + realizedString).getChildren().get(0).toProcedureCall();
-        interpreter.schedule(c);
-
-        return Optional.empty();
+        return frame.state();
     }
 
     @Override
@@ -252,7 +230,141 @@ public class Template implements ProcedureProvider {
         it.env().define(new Procedure("map", this::map, "__template__", "__values__").macro());
         it.env().define(new Procedure("filter", this::filter, "__template__", "__values__").macro());
         it.env().define(new Procedure("find", this::find, "__template__", "__values__").macro());
+        it.env().define(new Procedure("reduce", this::reduce, "__template__", "__values__").macro());
+        it.env().define(new Procedure("pmap", this::pmap, "__template__", "__values__"));
+        it.env().define(new Procedure("pfilter", this::pfilter, "__template__", "__values__"));
+        it.env().define(new Procedure("preduce", this::preduce, "__template__", "__values__"));
 
         return it;
     }
+
+    /**
+     * The parsed template and the elements of one call. The statements of
+     * the template are run for one element after another, results are
+     * collected as needed by the procedure.
+     */
+    private static class Run {
+
+        private final java.util.List<Node> statements;
+        private final java.util.List<Node> values;
+        private final boolean isList;
+
+        // The places of ?, ?1 and ?2 in the statements, as list and index
+        private final java.util.List<java.util.List<Node>> holes = new ArrayList<>();
+        private final java.util.List<Integer> holeIndexes = new ArrayList<>();
+        private final java.util.List<Boolean> holeIsSecond = new ArrayList<>();
+
+        private final java.util.List<Node> results = new ArrayList<>();
+        private Node result = Node.nil();
+        // The result so far of reduce
+        private Node accumulator;
+
+        private int pos = 0;
+        private int statement = 0;
+        private boolean waiting = false;
+
+        private Run(Node program, java.util.List<Node> values, boolean isList) {
+            this.statements = new ArrayList<>(program.getChildren());
+            this.values = values;
+            this.isList = isList;
+            prepare(statements);
+        }
+
+        /**
+         * Finds the places of ? in the statements. Parsed lists are cached
+         * and shared, so the calls leading to a ? are copied first.
+         */
+        private void prepare(java.util.List<Node> nodes) {
+            for (int i = 0; i < nodes.size(); i++) {
+                Node n = nodes.get(i);
+                if (isHole(n)) {
+                    holes.add(nodes);
+                    holeIndexes.add(i);
+                    holeIsSecond.add(n.toSymbolWord().getSymbol().equals("?2"));
+                } else if (hasHoles(n)) {
+                    Call copy = new Call(n.toProcedureCall().getName());
+                    copy.setPosInSource(n.getLine(), n.getCol());
+                    copy.addChildren(n.getChildren());
+                    nodes.set(i, copy);
+                    prepare(copy.getChildren());
+                }
+            }
+        }
+
+        private static boolean isHole(Node node) {
+            if (!node.type().equals(NodeType.SYMBOL)) {
+                return false;
+            }
+            String symbol = node.toSymbolWord().getSymbol();
+            return symbol.equals("?") || symbol.equals("?1") || symbol.equals("?2");
+        }
+
+        private static boolean hasHoles(Node node) {
+            if (!node.type().equals(NodeType.PROCCALL)) {
+                return false;
+            }
+            for (Node n : node.getChildren()) {
+                if (isHole(n) || hasHoles(n)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean finished() {
+            return pos >= values.size();
+        }
+
+        private Node value() {
+            return values.get(pos);
+        }
+
+        /**
+         * Runs the template for the current element. Schedules the next call
+         * and returns false, or returns true if the result is known.
+         */
+        private boolean step(Interpreter interpreter) {
+            if (waiting) {
+                result = interpreter.lastResult();
+                waiting = false;
+            } else if (statement == 0) {
+                // Only reduce has two values, ?2 is nil otherwise
+                Node first = Node.literal(accumulator != null ? accumulator : value());
+                Node second = accumulator != null ? Node.literal(value()) : Node.nil();
+                for (int i = 0; i < holes.size(); i++) {
+                    holes.get(i).set(holeIndexes.get(i), holeIsSecond.get(i) ? second : first);
+                }
+                result = Node.nil();
+            }
+
+            while (statement < statements.size()) {
+                Node next = statements.get(statement++);
+                if (next.type().equals(NodeType.PROCCALL)) {
+                    interpreter.schedule(next.toProcedureCall());
+                    waiting = true;
+                    return false;
+                }
+                result = next;
+            }
+
+            return true;
+        }
+
+        private void advance() {
+            pos++;
+            statement = 0;
+        }
+
+        private Node collect() {
+            if (isList) {
+                return Node.list(results);
+            }
+
+            StringBuilder result = new StringBuilder();
+            for (Node r : results) {
+                result.append(r.toString());
+            }
+            return Node.quote(result.toString());
+        }
+    }
 }
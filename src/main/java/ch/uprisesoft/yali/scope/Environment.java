@@ -15,12 +15,17 @@
  */
 package ch.uprisesoft.yali.scope;
 
+import ch.uprisesoft.yali.ast.node.Call;
 import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
 import ch.uprisesoft.yali.ast.node.Procedure;
+import ch.uprisesoft.yali.runtime.interpreter.CompositeTracer;
+import ch.uprisesoft.yali.runtime.interpreter.NoTracer;
 import ch.uprisesoft.yali.runtime.interpreter.Tracer;
 import ch.uprisesoft.yali.runtime.procedures.FunctionNotFoundException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *A datastructure to manage the scopes in a running program. Yali is dynamic
@@ -38,12 +43,24 @@ import java.util.List;
  */
 public class Environment {
 
+    /**
+     * Counts the changes to procedure bindings. Parsed code depends on the
+     * procedures (and their arities) visible at parse time, so caches of
+     * parsed code remember the epoch they were built at and are discarded as
+     * soon as it moves on. Shared with the environments created by create(),
+     * which share the global scope.
+     */
+    private AtomicLong definitions = new AtomicLong();
+
     private List<Tracer> tracers = new ArrayList<>();
+    private Tracer tracer = NoTracer.INSTANCE;
 
     private List<Scope> scopes = new ArrayList<>();
+    private List<Scope> pool = new ArrayList<>();
 
     public void addTracer(Tracer tracer) {
         tracers.add(tracer);
+        this.tracer = CompositeTracer.of(tracers);
     }
 
     public Scope peek() {
@@ -55,8 +72,99 @@ public class Environment {
         return true;
     }
 
+    /**
+     * Pushes an empty scope owned by this environment. Owned scopes are
+     * recycled when they are popped, so they must not be kept beyond that.
+     *
+     * @param name the name of the new scope
+     * @return the pushed scope
+     */
+    public Scope push(String name) {
+        return push(name, Scope.NO_SLOTS);
+    }
+
+    /**
+     * Pushes an empty scope owned by this environment, with a slot for each 
+     * of the given names.
+     *
+     * @param name the name of the new scope
+     * @param slots the names with a fixed slot, usually Procedure.getSlots()
+     * @return the pushed scope
+     */
+    public Scope push(String name, Symbol[] slots) {
+        Scope scope;
+        if (pool.isEmpty()) {
+            scope = new Scope(name);
+            scope.pooled = true;
+        } else {
+            scope = pool.remove(pool.size() - 1);
+        }
+        scope.reset(name, slots);
+        scopes.add(scope);
+        return scope;
+    }
+
     public Scope pop() {
-        return scopes.remove(scopes.size() - 1);
+        Scope scope = scopes.remove(scopes.size() - 1);
+        if (scope.definesProcedures()) {
+            definitions.incrementAndGet();
+        }
+        if (scope.pooled) {
+            scope.reset("", Scope.NO_SLOTS);
+            pool.add(scope);
+        }
+        return scope;
+    }
+
+    /**
+     * Lets a tail call continue in the scope of its caller. The scope at the
+     * top, pushed for the callee, is popped and the scope below is handed
+     * over to the callee with the callee's name and slot layout. The variables
+     * of the caller stay visible, as they would if the caller was still
+     * waiting below. Scopes in between, e.g. of output waiting for the
+     * callee, are popped too. Only done while nothing is bound in the popped
+     * scopes.
+     *
+     * @param depth the distance of the caller scope from the top
+     * @return true if the scopes were merged, false otherwise
+     */
+    public boolean tail(int depth) {
+        if (scopes.size() - depth < 2) {
+            return false;
+        }
+        for (int i = 0; i < depth; i++) {
+            if (!scopes.get(scopes.size() - 1 - i).isEmpty()) {
+                return false;
+            }
+        }
+
+        Scope callee = peek();
+        String name = callee.name();
+        Symbol[] slots = callee.slotNames();
+        for (int i = 0; i < depth; i++) {
+            pop();
+        }
+        peek().reuse(name, slots);
+        return true;
+    }
+
+    /**
+     * Creates an empty environment of the same kind, e.g. for a forked
+     * interpreter.
+     *
+     * @return a new environment without scopes
+     */
+    public Environment create() {
+        return share(new Environment());
+    }
+
+    /**
+     * Lets a new environment count its changes to procedures together with
+     * this one
+     */
+    protected Environment share(Environment created) {
+        created.definitions = definitions;
+        return created;
     }
 
     public Scope first() {
@@ -65,6 +173,19 @@ public class Environment {
 
     public void first(Scope first) {
         scopes.set(0, first);
+        definitions.incrementAndGet();
+    }
+
+    /**
+     * Returns the current definitions epoch. The epoch changes whenever a
+     * procedure is defined, aliased, replaced or goes out of scope. Variables
+     * do not hide procedures of the same name, so binding them leaves the
+     * epoch alone.
+     *
+     * @return the current definitions epoch
+     */
+    public long epoch() {
+        return definitions.get();
     }
 
 
@@ -73,45 +194,134 @@ public class Environment {
      */
 
     public void make(String name, Node value) {
+        make(Symbol.of(name), value);
+    }
 
-        tracers.forEach(t -> t.make(name, value, this));
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).thingable(name.toLowerCase())) {
-                scopes.get(i).make(name.toLowerCase(), value);
-                return;
-            }
+    public void make(Symbol name, Node value) {
+
+        tracer.make(name.name(), value, this);
+        if (value.type().equals(NodeType.PROCEDURE)) {
+            definitions.incrementAndGet();
         }
+        Scope scope = owner(name);
+        replace(scope, name);
+        scope.make(name, value);
+    }
 
-        scopes.get(0).make(name.toLowerCase(), value);
+    /**
+     * The innermost scope binding a name, or the global scope if the name is 
+     * unbound
+     */
+    Scope owner(Symbol name) {
+        for (int i = scopes.size() - 1; i > 0; i--) {
+            Scope scope = scopes.get(i);
+            if (scope.thingable(name)) {
+                return scope;
+            }
+        }
+        return scopes.get(0);
     }
 
     public void local(String name) {
-        tracers.forEach(t -> t.local(name, this));
-        peek().local(name.toLowerCase());
+        local(Symbol.of(name));
+    }
+
+    public void local(Symbol name) {
+        tracer.local(name.name(), this);
+        replace(peek(), name);
+        peek().local(name);
+    }
+
+    /**
+     * Binds a procedure parameter in the current scope. Does the same as 
+     * local() followed by make(), but stores the value directly in the given
+     * slot if the current scope has one for the name.
+     *
+     * @param name the name of the parameter
+     * @param slot the slot of the parameter
+     * @param value the argument
+     */
+    public void bind(Symbol name, int slot, Node value) {
+        tracer.local(name.name(), this);
+        tracer.make(name.name(), value, this);
+        if (value.type().equals(NodeType.PROCEDURE)) {
+            definitions.incrementAndGet();
+        } else {
+            replace(peek(), name);
+        }
+        peek().bind(name, slot, value);
+    }
+
+    /**
+     * Counts a change if the name is bound to a procedure in the scope, it is
+     * about to be replaced
+     */
+    private void replace(Scope scope, Symbol name) {
+        if (!scope.definesProcedures()) {
+            return;
+        }
+        Node previous = scope.binding(name);
+        if (previous != null && previous.type().equals(NodeType.PROCEDURE)) {
+            definitions.incrementAndGet();
+        }
     }
 
     public Node thing(String name) {
+        return thing(Symbol.of(name));
+    }
 
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).thingable(name.toLowerCase())) {
-                final Node ret = scopes.get(i).thing(name.toLowerCase());
-                tracers.forEach(t -> t.thing(name, ret, this));
-                return ret;
-            }
+    public Node thing(Symbol name) {
+        Node value = binding(name);
+        if (value != null) {
+            tracer.thing(name.name(), value, this);
+            return value;
         }
 
-        tracers.forEach(t -> t.thing(name, Node.none(), this));
+        tracer.thing(name.name(), Node.none(), this);
         return Node.none();
     }
 
+    /**
+     * Gets the value of a variable that is expected in the given slot of the
+     * current scope, e.g. a parameter read in the body of its procedure. Falls
+     * back to thing() if the slot does not hold the variable.
+     *
+     * @param name the name of the variable
+     * @param slot the expected slot
+     * @return the value bound to the name, or none
+     */
+    public Node thing(Symbol name, int slot) {
+        Node value = peek().slot(slot, name);
+        if (value == null) {
+            return thing(name);
+        }
+        tracer.thing(name.name(), value, this);
+        return value;
+    }
+
+    public boolean thingable(Symbol name, int slot) {
+        return peek().slot(slot, name) != null || thingable(name);
+    }
+
     public Boolean thingable(String name) {
+        return thingable(Symbol.of(name));
+    }
+
+    public boolean thingable(Symbol name) {
+        return binding(name) != null;
+    }
+
+    /**
+     * The innermost value bound to a name, or null if it is unbound
+     */
+    Node binding(Symbol name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).thingable(name)) {
-                return true;
+            Node value = scopes.get(i).binding(name);
+            if (value != null) {
+                return value;
             }
         }
-
-        return false;
+        return null;
     }
 
     /**
@@ -120,28 +330,66 @@ public class Environment {
 
     public void define(Procedure procedure) {
         peek().make(procedure.getName(), procedure);
+        definitions.incrementAndGet();
     }
 
     public Boolean defined(String name) {
-        String lowerName = name.toLowerCase();
-        int size =  scopes.size() - 1;
-        for (int i = size; i >= 0; i--) {
-            if (scopes.get(i).thingable(lowerName)) {
-                return true;
+        return defined(Symbol.of(name));
+    }
+
+    public boolean defined(Symbol name) {
+        return definition(name) != null;
+    }
+
+    public Procedure procedure(String name) {
+        Procedure definition = definition(Symbol.of(name));
+        if (definition == null) {
+            throw new FunctionNotFoundException(name);
+        }
+        return definition;
+    }
+
+    public Procedure procedure(Symbol name) {
+        Procedure definition = definition(name);
+        if (definition == null) {
+            throw new FunctionNotFoundException(name.name());
+        }
+        return definition;
+    }
+
+    /**
+     * The innermost procedure bound to a name, or null if there is none.
+     * Variables with the same name are skipped, they do not hide procedures.
+     */
+    private Procedure definition(Symbol name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Node value = scopes.get(i).binding(name);
+            if (value != null && value.type().equals(NodeType.PROCEDURE)) {
+                return value.toProcedureDef();
             }
         }
-        return false;
+        return null;
     }
 
-    public Procedure procedure(String name) {
-        String lowerName = name.toLowerCase();
-        int size =  scopes.size() - 1;
-        for (int i = size; i >= 0; i--) {
-            if (scopes.get(i).thingable(lowerName)) {
-                return scopes.get(i).thing(lowerName).toProcedureDef();
+    /**
+     * Resolves the procedure a call refers to. The definition is cached on the
+     * call and reused until the definitions epoch changes, so a call site is
+     * looked up only once as long as no procedure is defined or replaced.
+     *
+     * @param call the call to resolve
+     * @return the definition of the called procedure
+     */
+    public Procedure procedure(Call call) {
+        long epoch = definitions.get();
+        Procedure definition = call.cached(this, epoch);
+        if (definition == null) {
+            definition = definition(call.symbol());
+            if (definition == null) {
+                throw new FunctionNotFoundException(call.getName());
             }
+            call.cache(this, epoch, definition);
         }
-        throw new FunctionNotFoundException(name);
+        return definition;
     }
 
     public void alias(String original, String alias) {
@@ -150,6 +398,7 @@ public class Environment {
             if (scopes.get(i).thingable(original.toLowerCase())) {
                 if (scopes.get(i).thingable(original)) {
                     scopes.get(i).make(alias, first().thing(original));
+                    definitions.incrementAndGet();
                 }
             }
         }
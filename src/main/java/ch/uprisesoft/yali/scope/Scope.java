@@ -16,9 +16,13 @@
 package ch.uprisesoft.yali.scope;
 
 import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
 import ch.uprisesoft.yali.runtime.interpreter.Interpreter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -30,17 +34,126 @@ import java.util.Map;
  * 
  * A scope is normally named after the procedure it closes over.
  * 
+ * The parameters and literal locals of the procedure are kept in slots with a
+ * fixed index (see Procedure.getSlots()). All other names are kept in a map.
+ * 
  * @author uprisesoft@gmail.com
  */
 public class Scope {
 
+    static final Symbol[] NO_SLOTS = new Symbol[0];
+
     private String scopeName = "";
-    private Map<String, Node> members = new HashMap<>();
+    private Symbol[] slotNames = NO_SLOTS;
+    private Node[] slots = new Node[0];
+    private Map<Symbol, Node> members = new HashMap<>();
+    private boolean procedures = false;
+
+    // Created by an Environment and recycled when popped
+    boolean pooled = false;
 
     public Scope(String scopeName) {
         this.scopeName = scopeName;
     }
 
+    /**
+     * Empties a recycled scope and gives it a new slot layout. The map and the 
+     * slot array keep their capacity, so a recycled scope does not allocate.
+     */
+    void reset(String scopeName, Symbol[] slotNames) {
+        this.scopeName = scopeName;
+        Arrays.fill(slots, 0, this.slotNames.length, null);
+        if (slots.length < slotNames.length) {
+            slots = new Node[slotNames.length];
+        }
+        this.slotNames = slotNames;
+        if (!members.isEmpty()) {
+            members.clear();
+        }
+        procedures = false;
+    }
+
+    /**
+     * Hands this scope over to another procedure, e.g. for a tail call. The
+     * variables stay, the ones in the new slot layout are moved to their slot.
+     */
+    void reuse(String scopeName, Symbol[] slotNames) {
+        this.scopeName = scopeName;
+        if (slotNames == this.slotNames) {
+            return;
+        }
+
+        for (int i = 0; i < this.slotNames.length; i++) {
+            if (slots[i] != null) {
+                members.put(this.slotNames[i], slots[i]);
+                slots[i] = null;
+            }
+        }
+        if (slots.length < slotNames.length) {
+            slots = new Node[slotNames.length];
+        }
+        this.slotNames = slotNames;
+        if (!members.isEmpty()) {
+            for (int i = 0; i < slotNames.length; i++) {
+                slots[i] = members.remove(slotNames[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the names with a slot in this scope
+     */
+    Symbol[] slotNames() {
+        return slotNames;
+    }
+
+    /**
+     * Check if nothing is bound in this scope.
+     * @return true if no variable or procedure is bound
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < slotNames.length; i++) {
+            if (slots[i] != null) {
+                return false;
+            }
+        }
+        return members.isEmpty();
+    }
+
+    private int slot(Symbol name) {
+        for (int i = 0; i < slotNames.length; i++) {
+            if (slotNames[i] == name) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The value in a slot, or null if the slot is empty or does not hold the
+     * given name.
+     */
+    Node slot(int slot, Symbol name) {
+        if (slot < slotNames.length && slotNames[slot] == name) {
+            return slots[slot];
+        }
+        return null;
+    }
+
+    /**
+     * Binds a name to a value, using the given slot if it belongs to the name.
+     */
+    void bind(Symbol name, int slot, Node value) {
+        if (slot < slotNames.length && slotNames[slot] == name) {
+            if (value.type().equals(NodeType.PROCEDURE)) {
+                procedures = true;
+            }
+            slots[slot] = value;
+        } else {
+            make(name, value);
+        }
+    }
+
     public String name() {
         return scopeName;
     }
@@ -53,25 +166,64 @@ public class Scope {
      * @return the value defined with the variable name
      */
     public Node thing(String name) {
-        if (members.containsKey(name)) {
-            return members.get(name);
+        return thing(Symbol.of(name));
+    }
+
+    public Node thing(Symbol name) {
+        Node value = binding(name);
+        if (value != null) {
+            return value;
         } 
 
         // Shouldn't happen
         return Node.none();
     }
 
+    /**
+     * The value bound to a name, or null if the name is not bound in this 
+     * scope. Saves the second lookup of thingable() followed by thing().
+     */
+    Node binding(Symbol name) {
+        for (int i = 0; i < slotNames.length; i++) {
+            if (slotNames[i] == name) {
+                return slots[i];
+            }
+        }
+        return members.get(name);
+    }
+
     /**
      * Bind a variable name to a value in this scope.
      * @param name the name of the variable
      * @param value the value of the variable
      */
     public void make(String name, Node value) {
-        members.put(name.toLowerCase(), value);
+        make(Symbol.of(name), value);
+    }
+
+    public void make(Symbol name, Node value) {
+        if (value.type().equals(NodeType.PROCEDURE)) {
+            procedures = true;
+        }
+        int slot = slot(name);
+        if (slot >= 0) {
+            slots[slot] = value;
+        } else {
+            members.put(name, value);
+        }
     }
     
     public void unmake(String name) {
-        members.remove(name.toLowerCase());
+        unmake(Symbol.of(name));
+    }
+
+    public void unmake(Symbol name) {
+        int slot = slot(name);
+        if (slot >= 0) {
+            slots[slot] = null;
+        } else {
+            members.remove(name);
+        }
     }
 
     /**
@@ -80,7 +232,16 @@ public class Scope {
      * @param name the name of the variable
      */
     public void local(String name) {
-        members.put(name.toLowerCase(), Node.none());
+        local(Symbol.of(name));
+    }
+
+    public void local(Symbol name) {
+        int slot = slot(name);
+        if (slot >= 0) {
+            slots[slot] = Node.none();
+        } else {
+            members.put(name, Node.none());
+        }
     }
 
     /**
@@ -89,7 +250,32 @@ public class Scope {
      * @return true if defined, false otherwise
      */
     public boolean thingable(String name) {
-        return members.containsKey(name);
+        return thingable(Symbol.of(name));
+    }
+
+    public boolean thingable(Symbol name) {
+        return binding(name) != null;
+    }
+
+    /**
+     * @return the names bound in this scope
+     */
+    List<Symbol> names() {
+        List<Symbol> names = new ArrayList<>(members.keySet());
+        for (int i = 0; i < slotNames.length; i++) {
+            if (slots[i] != null) {
+                names.add(slotNames[i]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Check if a procedure was ever bound in this scope.
+     * @return true if this scope holds or held a procedure, false otherwise
+     */
+    public boolean definesProcedures() {
+        return procedures;
     }
 
 }
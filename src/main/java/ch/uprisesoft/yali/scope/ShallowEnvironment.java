@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.scope;
+
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.Procedure;
+import java.util.Arrays;
+
+/**
+ * An environment with shallow binding. The plain Environment finds a variable
+ * by searching the scopes from the innermost to the global one (deep
+ * binding), so reading a global variable in a deep recursion gets slower with
+ * every level.
+ *
+ * This environment remembers for every name the innermost scope binding it. A
+ * scope that binds a name with local, as a parameter or as a procedure saves
+ * the previous owner of the name, and the owner is restored when the scope is
+ * popped. Reading or making a variable looks at a single scope, whatever the
+ * depth of the call chain.
+ *
+ * The scopes themselves still hold the values, so scopes can be inspected and
+ * shared between environments as usual. Names bound by changing a scope
+ * directly instead of through the environment are only found in the global
+ * scope and in the scope at the top when it is pushed.
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class ShallowEnvironment extends Environment {
+
+    // The innermost non global scope binding a name, indexed by symbol id
+    private Scope[] owners = new Scope[256];
+
+    // The previous owners of the names bound in the scopes on the stack
+    private Symbol[] savedNames = new Symbol[64];
+    private Scope[] savedOwners = new Scope[64];
+    private int saved = 0;
+
+    // The number of saved owners when a scope was pushed, indexed by depth
+    private int[] marks = new int[16];
+
+    @Override
+    public Environment create() {
+        return share(new ShallowEnvironment());
+    }
+
+    @Override
+    public boolean push(Scope scope) {
+        super.push(scope);
+        mark();
+        for (Symbol name : scope.names()) {
+            own(name);
+        }
+        return true;
+    }
+
+    @Override
+    public Scope push(String name, Symbol[] slots) {
+        Scope scope = super.push(name, slots);
+        mark();
+        return scope;
+    }
+
+    @Override
+    public Scope pop() {
+        int mark = marks[size() - 1];
+        while (saved > mark) {
+            saved--;
+            owners[savedNames[saved].id()] = savedOwners[saved];
+            savedNames[saved] = null;
+            savedOwners[saved] = null;
+        }
+        return super.pop();
+    }
+
+    @Override
+    public void local(Symbol name) {
+        super.local(name);
+        own(name);
+    }
+
+    @Override
+    public void bind(Symbol name, int slot, Node value) {
+        super.bind(name, slot, value);
+        own(name);
+    }
+
+    @Override
+    public void define(Procedure procedure) {
+        super.define(procedure);
+        own(Symbol.of(procedure.getName()));
+    }
+
+    @Override
+    Scope owner(Symbol name) {
+        Scope owner = owner(name.id());
+        if (owner == null) {
+            return first();
+        }
+        if (owner.binding(name) == null) {
+            // Unmade behind our back
+            return super.owner(name);
+        }
+        return owner;
+    }
+
+    @Override
+    Node binding(Symbol name) {
+        Scope owner = owner(name.id());
+        if (owner == null) {
+            return first().binding(name);
+        }
+        Node value = owner.binding(name);
+        if (value == null) {
+            // Unmade behind our back
+            return super.binding(name);
+        }
+        return value;
+    }
+
+    private Scope owner(int id) {
+        return id < owners.length ? owners[id] : null;
+    }
+
+    private void mark() {
+        int depth = size() - 1;
+        if (depth >= marks.length) {
+            marks = Arrays.copyOf(marks, marks.length * 2);
+        }
+        marks[depth] = saved;
+    }
+
+    /**
+     * Makes the scope at the top the owner of a name it just bound
+     */
+    private void own(Symbol name) {
+        Scope top = peek();
+        if (top == first()) {
+            return;
+        }
+
+        int id = name.id();
+        if (id >= owners.length) {
+            owners = Arrays.copyOf(owners, Math.max(owners.length * 2, id + 1));
+        }
+        if (owners[id] == top) {
+            return;
+        }
+
+        if (saved == savedNames.length) {
+            savedNames = Arrays.copyOf(savedNames, saved * 2);
+            savedOwners = Arrays.copyOf(savedOwners, saved * 2);
+        }
+        savedNames[saved] = name;
+        savedOwners[saved] = owners[id];
+        saved++;
+        owners[id] = top;
+    }
+}
@@ -0,0 +1,81 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.scope;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An interned, case folded name of a variable or procedure. There is exactly
+ * one Symbol per name, so symbols are compared by identity and names are
+ * folded only once, when they are first seen by the lexer or parser.
+ * 
+ * @author uprisesoft@gmail.com
+ */
+public final class Symbol {
+
+    // Maps every spelling seen so far to its symbol, e.g. "Fd" and "fd"
+    private static final ConcurrentMap<String, Symbol> table = new ConcurrentHashMap<>();
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private final String name;
+    private final int id;
+
+    private Symbol(String name) {
+        this.name = name;
+        this.id = ids.getAndIncrement();
+    }
+
+    /**
+     * Returns the symbol for a name, ignoring case.
+     *
+     * @param name a name in any spelling
+     * @return the one symbol of the name
+     */
+    public static Symbol of(String name) {
+        Symbol symbol = table.get(name);
+        if (symbol == null) {
+            symbol = table.computeIfAbsent(name.toLowerCase(), Symbol::new);
+            table.putIfAbsent(name, symbol);
+        }
+        return symbol;
+    }
+
+    /**
+     * @return the case folded name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return a small number unique to this symbol
+     */
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -18,6 +18,7 @@ package ch.uprisesoft.yali.helper;
 import ch.uprisesoft.yali.lexer.Lexer;
 import ch.uprisesoft.yali.parser.Parser;
 import ch.uprisesoft.yali.runtime.procedures.builtin.MockTurtleManager;
+import ch.uprisesoft.yali.runtime.interpreter.BytecodeInterpreter;
 import ch.uprisesoft.yali.runtime.interpreter.UnthreadedInterpreter;
 import ch.uprisesoft.yali.runtime.io.InputGenerator;
 import ch.uprisesoft.yali.runtime.io.OutputObserver;
@@ -72,6 +73,16 @@ public class ObjectMother {
 		return i;
 	}
 
+	public BytecodeInterpreter getBytecodeInterpreter(OutputObserver oo ,InputGenerator ig) {
+		BytecodeInterpreter i = new BytecodeInterpreter();
+		i.loadStdLib(oo, ig);
+
+		MockTurtleManager mtm = new MockTurtleManager();
+		mtm.registerProcedures(i);
+
+		return i;
+	}
+
 	public UnthreadedInterpreter fork(UnthreadedInterpreter original, OutputObserver oo ,InputGenerator ig) {
 		UnthreadedInterpreter fork = new UnthreadedInterpreter();
 
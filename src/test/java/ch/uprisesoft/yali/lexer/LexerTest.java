@@ -15,6 +15,7 @@
  */
 package ch.uprisesoft.yali.lexer;
 
+import java.io.StringReader;
 import java.util.List;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -263,4 +264,93 @@ public class LexerTest {
         assertThat(tokens.get(0).getLexeme(), is("?abc"));
     }
 
+    @Test
+    public void testOpenScansLazily() {
+        String testInput = "print 1\nprint [a b]\nprint 3\n";
+
+        Lexer tokenizer = new Lexer();
+        List<Token> tokens = tokenizer.open(testInput);
+
+        assertThat(tokenizer.fill(1), is(true));
+        assertThat(tokens.size(), is(2));
+        assertThat(tokens.get(1).type(), is(TokenType.NUMBER));
+
+        assertThat(tokenizer.fill(100), is(false));
+        assertThat(tokens.size(), is(13));
+        assertThat(tokens.get(12).type(), is(TokenType.EOF));
+    }
+
+    @Test
+    public void testReaderSource() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("to p").append(i).append(" :x\n");
+            sb.append("print [list ").append(i).append("]\n");
+            sb.append("end\n");
+        }
+        String testInput = sb.toString();
+
+        List<Token> expected = new Lexer().scan(testInput);
+        List<Token> tokens = new Lexer().scan(new ReaderSource(new StringReader(testInput)));
+
+        assertThat(tokens.size(), is(expected.size()));
+        for (int i = 0; i < tokens.size(); i++) {
+            assertThat(tokens.get(i).type(), is(expected.get(i).type()));
+            assertThat(tokens.get(i).getLexeme(), is(expected.get(i).getLexeme()));
+            assertThat(tokens.get(i).getAbsolute(), is(expected.get(i).getAbsolute()));
+        }
+    }
+
+    @Test
+    public void testKeywordsIgnoreCase() {
+        String testInput = "To END True fAlse NIL tox ends nil? true_";
+
+        Lexer tokenizer = new Lexer();
+        List<Token> tokens = tokenizer.scan(testInput);
+
+        assertThat(tokens.get(0).type(), is(TokenType.TO));
+        assertThat(tokens.get(1).type(), is(TokenType.END));
+        assertThat(tokens.get(2).type(), is(TokenType.TRUE));
+        assertThat(tokens.get(3).type(), is(TokenType.FALSE));
+        assertThat(tokens.get(4).type(), is(TokenType.NIL));
+        for (int i = 5; i < 9; i++) {
+            assertThat(tokens.get(i).type(), is(TokenType.SYMBOL));
+        }
+    }
+
+    @Test
+    public void testUnicodeSymbol() {
+        String testInput = "grüße 42";
+
+        Lexer tokenizer = new Lexer();
+        List<Token> tokens = tokenizer.scan(testInput);
+
+        assertThat(tokens.size(), is(3));
+        assertThat(tokens.get(0).type(), is(TokenType.SYMBOL));
+        assertThat(tokens.get(0).getLexeme(), is("grüße"));
+        assertThat(tokens.get(1).type(), is(TokenType.NUMBER));
+    }
+
+    @Test
+    public void testTokenBuffer() {
+        String testInput = "to double :x\noutput :x * 2\nend\nprint [a [b]]\n";
+
+        List<Token> expected = new Lexer().scan(testInput);
+        Lexer tokenizer = new Lexer();
+        TokenBuffer buffer = tokenizer.buffer(testInput);
+        tokenizer.fill(Integer.MAX_VALUE - 1);
+
+        assertThat(buffer.size(), is(expected.size()));
+        for (int i = 0; i < buffer.size(); i++) {
+            Token token = buffer.token(i);
+            assertThat(token.type(), is(expected.get(i).type()));
+            assertThat(token.getLexeme(), is(expected.get(i).getLexeme()));
+            assertThat(token.getLine(), is(expected.get(i).getLine()));
+            assertThat(token.getPos(), is(expected.get(i).getPos()));
+            assertThat(token.getAbsolute(), is(expected.get(i).getAbsolute()));
+        }
+        assertThat(buffer.type(9), is(TokenType.END));
+        assertThat(buffer.lexeme(9), is("to double :x\noutput :x * 2\nend"));
+    }
+
 }
@@ -18,15 +18,18 @@ package ch.uprisesoft.yali.parser;
 import ch.uprisesoft.yali.ast.node.Node;
 import ch.uprisesoft.yali.ast.node.NodeType;
 import ch.uprisesoft.yali.ast.node.Procedure;
+import ch.uprisesoft.yali.exception.TokenTypeException;
 import ch.uprisesoft.yali.helper.ObjectMother;
 import ch.uprisesoft.yali.lexer.Lexer;
 import ch.uprisesoft.yali.runtime.interpreter.UnthreadedInterpreter;
 import ch.uprisesoft.yali.runtime.io.InputGenerator;
 import ch.uprisesoft.yali.runtime.io.OutputObserver;
+import java.io.StringReader;
 import java.util.ArrayList;
 import org.junit.jupiter.api.Test;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.BeforeEach;
 
 /**
@@ -438,4 +441,73 @@ public class ParserTest {
         assertThat(result.getChildren().get(0).toQuotedWord().getQuote(), is("\""));
 //        assertThat(result.getChildren().get(0).toList().getChildren().size(), is(8));
     }
+
+    @Test
+    public void testForwardReference() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("print twice 3 4").append("\n");
+        sb.append("to twice :a :b").append("\n");
+        sb.append("output :a * 2 + :b").append("\n");
+        sb.append("end").append("\n");
+        Node result = parse(sb.toString());
+
+        assertThat(result.getChildren().size(), is(1));
+        Node print = result.getChildren().get(0);
+        assertThat(print.toProcedureCall().getName(), is("print"));
+        Node twice = print.getChildren().get(0);
+        assertThat(twice.toProcedureCall().getName(), is("twice"));
+        assertThat(twice.getChildren().size(), is(2));
+    }
+
+    @Test
+    public void testForwardReferenceInBody() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("to outer :x").append("\n");
+        sb.append("output (inner :x 1)").append("\n");
+        sb.append("end").append("\n");
+        sb.append("to inner :a :b").append("\n");
+        sb.append("output :a + :b").append("\n");
+        sb.append("end").append("\n");
+        sb.append("outer 2").append("\n");
+        Node result = parse(sb.toString());
+
+        assertThat(result.getChildren().size(), is(1));
+        Procedure outer = p.getFunctions().env().procedure("outer");
+        Node inner = outer.getChildren().get(0).getChildren().get(0);
+        assertThat(inner.toProcedureCall().getName(), is("inner"));
+        assertThat(inner.getChildren().size(), is(2));
+    }
+
+    @Test
+    public void testUndefinedNameStaysWord() {
+        Node result = parse("print foo");
+
+        assertThat(result.getChildren().size(), is(1));
+        assertThat(result.getChildren().get(0).getChildren().get(0).type(), is(NodeType.SYMBOL));
+    }
+
+    @Test
+    public void testReadFromReader() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("to greet :name").append("\n");
+        sb.append("print [Hello World]").append("\n");
+        sb.append("end").append("\n");
+        sb.append("greet \"you").append("\n");
+        Node result = p.read(new StringReader(sb.toString()));
+
+        assertThat(result.getChildren().size(), is(1));
+        assertThat(result.getChildren().get(0).toProcedureCall().getName(), is("greet"));
+        Procedure greet = p.getFunctions().env().procedure("greet");
+        assertThat(greet.getChildren().get(0).getChildren().get(0).toList().source(), is("[Hello World]"));
+    }
+
+    @Test
+    public void testErrorAfterUndefinedName() {
+        assertThrows(TokenTypeException.class, () -> parse("print foo\nprint (1 + \n"));
+    }
+
+    @Test
+    public void testUnterminatedDefinitionAfterUndefinedName() {
+        assertThrows(TokenTypeException.class, () -> parse("print foo\nto x\nprint 3\n"));
+    }
 }
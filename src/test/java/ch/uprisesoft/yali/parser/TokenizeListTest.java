@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import org.junit.jupiter.api.Test;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 
@@ -71,8 +72,14 @@ public class TokenizeListTest {
         outputs = new ArrayList<>();
     }
     
+    @AfterEach
+    public void tearDown() {
+        Parser.debug(false);
+    }
+    
     @Test
     public void testListTokens() {
+        Parser.debug(true);
         String input = "[1 two [x y] 3]\n";
         Node result = it.read(input);
         ch.uprisesoft.yali.ast.node.List list = result.getChildren().get(0).toList();
@@ -91,4 +98,16 @@ public class TokenizeListTest {
         assertThat(list.getChildren().get(2).token().get(3).getLexeme(), is("]"));
     }
     
+    @Test
+    public void testListPositionsWithoutDebug() {
+        String input = "print 1\n  [1 two [x y] 3]\n";
+        Node result = it.read(input);
+        ch.uprisesoft.yali.ast.node.List list = result.getChildren().get(1).toList();
+        
+        assertThat(list.getLine(), is(2));
+        assertThat(list.getCol(), is(2));
+        assertThat(list.token().size(), is(1));
+        assertThat(list.getChildren().get(2).token().get(0).getLexeme(), is("[x y]"));
+    }
+    
 }
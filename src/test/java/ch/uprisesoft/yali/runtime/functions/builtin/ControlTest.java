@@ -169,6 +169,33 @@ public class ControlTest {
         assertThat(it.env().thing("testvar").toQuotedWord().getQuote(), is("yes"));
     }
 
+    @Test
+    public void testNestedRepeat() {
+		String sb = "make \"count 0" + "\n" +
+				"repeat 3 [repeat 2 [make \"count :count + 1]]" + "\n";
+		it.run(it.read(sb));
+
+        assertThat(it.env().thing("count").toIntegerWord().getInteger(), is(6));
+    }
+
+    @Test
+    public void testRepeatManyTimes() {
+		// Two calls times the count do not fit in an int
+		String sb = "to countup" + "\n" +
+				"repeat 1431655766 [make \"n :n + 1 pause]" + "\n" +
+				"end" + "\n" +
+				"make \"n 0" + "\n" +
+				"countup" + "\n";
+		it.run(it.read(sb));
+
+		assertThat(it.paused(), is(true));
+		assertThat(it.env().thing("n").toIntegerWord().getInteger(), is(1));
+
+		it.resume();
+		assertThat(it.paused(), is(true));
+		assertThat(it.env().thing("n").toIntegerWord().getInteger(), is(2));
+    }
+
     @Test
     public void testIfScope() {
 		it.run(it.read("if true [make \"testvar \"yes]" + "\n"));
@@ -478,4 +505,37 @@ public class ControlTest {
         assertThat(outputs.get(1), is("two\n"));
     }
 
+    @Test
+    public void testRunBlockIsParsedOnce() {
+		String sb = "make \"counter 0" + "\n" +
+				"make \"block [make \"counter :counter + 1]" + "\n" +
+				"run :block" + "\n" +
+				"run :block" + "\n";
+        it.run(it.read(sb));
+
+        List block = it.env().thing("block").toList();
+        assertThat(block.parsed(it.env(), it.env().epoch()), is(notNullValue()));
+        assertThat(it.env().thing("counter").toIntegerWord().getInteger(), is(2));
+    }
+
+    @Test
+    public void testRunBlockIsReparsedAfterArityChange() {
+		String sb = "to pick :a" + "\n" +
+				"output :a" + "\n" +
+				"end" + "\n" +
+				"make \"block [make \"x pick 5 make \"y 6]" + "\n" +
+				"run :block" + "\n";
+        it.run(it.read(sb));
+
+        assertThat(it.env().thing("x").toIntegerWord().getInteger(), is(5));
+
+		sb = "to pick :a :b" + "\n" +
+				"output :b" + "\n" +
+				"end" + "\n" +
+				"run :block" + "\n";
+        it.run(it.read(sb));
+
+        assertThat(it.env().thing("x").toIntegerWord().getInteger(), is(6));
+        assertThat(it.env().thing("y").toIntegerWord().getInteger(), is(6));
+    }
 }
@@ -15,13 +15,17 @@
  */
 package ch.uprisesoft.yali.runtime.functions.builtin;
 
+import ch.uprisesoft.yali.ast.node.Array;
+import ch.uprisesoft.yali.ast.node.List;
 import ch.uprisesoft.yali.ast.node.Node;
 import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.ast.node.word.FloatWord;
 import ch.uprisesoft.yali.helper.ObjectMother;
 import ch.uprisesoft.yali.runtime.interpreter.UnthreadedInterpreter;
 import ch.uprisesoft.yali.runtime.io.InputGenerator;
 import ch.uprisesoft.yali.runtime.io.OutputObserver;
 import java.util.ArrayList;
+import java.util.Arrays;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import org.junit.jupiter.api.BeforeEach;
@@ -162,4 +166,182 @@ public class DataTest {
         assertThat(res.getChildren().get(3).type(), is(NodeType.SYMBOL));
         assertThat(res.getChildren().get(3).toString(), is("4"));
     }
+    
+    @Test
+    public void testSharedListsStayIndependent() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("make \"a butfirst [0 1 2 3]").append("\n");
+        sb.append("make \"b fput \"x :a").append("\n");
+        sb.append("make \"c fput \"y :a").append("\n");
+        sb.append("make \"d lput \"z butlast :a").append("\n");
+        sb.append("setitem 1 :b \"w").append("\n");
+        it.run(it.read(sb.toString()));
+
+        assertThat(it.env().thing("a").toString(), is("[1 2 3]"));
+        assertThat(it.env().thing("b").toString(), is("[w 1 2 3]"));
+        assertThat(it.env().thing("c").toString(), is("[y 1 2 3]"));
+        assertThat(it.env().thing("d").toString(), is("[1 2 z]"));
+    }
+    
+    @Test
+    public void testRecursiveListCopy() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("to build :n :acc").append("\n");
+        sb.append("ifelse :n = 0 [output :acc] [output build :n - 1 fput :n :acc]").append("\n");
+        sb.append("end").append("\n");
+        sb.append("to copy :l").append("\n");
+        sb.append("ifelse empty? :l [output []] [output fput first :l copy butfirst :l]").append("\n");
+        sb.append("end").append("\n");
+        sb.append("copy build 50000 []").append("\n");
+        Node res = it.run(it.read(sb.toString()));
+
+        assertThat(res.getChildren().size(), is(50000));
+        assertThat(res.getChildren().get(0).toString(), is("1"));
+        assertThat(res.getChildren().get(49999).toString(), is("50000"));
+    }
+
+    @Test
+    public void testArray() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("make \"a array 3").append("\n");
+        sb.append("setitem 2 :a 5").append("\n");
+        sb.append("setitem 3 :a item 2 :a").append("\n");
+        it.run(it.read(sb.toString()));
+
+        Array a = it.env().thing("a").toArray();
+        assertThat(a.toString(), is("{0 5 5}"));
+        assertThat(a.isUnboxed(), is(true));
+
+        it.run(it.read("setitem 1 :a \"x"));
+        assertThat(a.toString(), is("{x 5 5}"));
+        assertThat(a.isUnboxed(), is(false));
+        assertThat(it.run(it.read("count :a")).toIntegerWord().getInteger(), is(3));
+    }
+
+    @Test
+    public void testFloatArray() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("make \"a array 2").append("\n");
+        sb.append("setitem 1 :a 0.5").append("\n");
+        it.run(it.read(sb.toString()));
+
+        Array a = it.env().thing("a").toArray();
+        assertThat(a.toString(), is("{0.5 0}"));
+        assertThat(a.isUnboxed(), is(false));
+
+        Array b = new Array(Arrays.asList(new FloatWord(0.5), new FloatWord(1.5)));
+        assertThat(b.isUnboxed(), is(true));
+    }
+
+    @Test
+    public void testFloatKeepsIntegerZero() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("make \"a array 3").append("\n");
+        sb.append("setitem 1 :a 0").append("\n");
+        sb.append("setitem 2 :a 2.5").append("\n");
+        sb.append("item 1 :a").append("\n");
+        Node res = it.run(it.read(sb.toString()));
+
+        assertThat(res.type(), is(NodeType.INTEGER));
+        assertThat(res.toString(), is("0"));
+        assertThat(it.run(it.read("item 2 :a")).type(), is(NodeType.FLOAT));
+    }
+
+    @Test
+    public void testMdArray() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("make \"m mdarray [2 3]").append("\n");
+        sb.append("mdsetitem [2 3] :m 7").append("\n");
+        sb.append("mditem [2 3] :m").append("\n");
+        Node res = it.run(it.read(sb.toString()));
+
+        assertThat(res.toIntegerWord().getInteger(), is(7));
+        assertThat(it.env().thing("m").toString(), is("{{0 0 0} {0 0 7}}"));
+    }
+
+    @Test
+    public void testListToArray() {
+        Node res = it.run(it.read("arraytolist listtoarray [a [b] c]"));
+
+        assertThat(res.type(), is(NodeType.LIST));
+        assertThat(res.toString(), is("[a [b] c]"));
+    }
+
+    @Test
+    public void testListOfNumbersToArray() {
+        Array ints = it.run(it.read("listtoarray [1 2 3]")).toArray();
+        assertThat(ints.isUnboxed(), is(true));
+        assertThat(ints.get(1).type(), is(NodeType.INTEGER));
+
+        Array floats = it.run(it.read("listtoarray [1.5 2.5]")).toArray();
+        assertThat(floats.isUnboxed(), is(true));
+        assertThat(floats.toString(), is("{1.5 2.5}"));
+
+        assertThat(it.run(it.read("listtoarray (list 1 2)")).toArray().isUnboxed(), is(true));
+        assertThat(it.run(it.read("listtoarray [1 true]")).toArray().isUnboxed(), is(false));
+    }
+
+    @Test
+    public void testEqualLists() {
+        assertThat(it.run(it.read("equal? [1 [2 3] a] [1 [2 3] a]")).toBooleanWord().getBoolean(), is(true));
+        assertThat(it.run(it.read("equal? [1 [2 3] a] [1 [3 2] a]")).toBooleanWord().getBoolean(), is(false));
+        assertThat(it.run(it.read("equal? [1 [2 3]] [1 [2 4]]")).toBooleanWord().getBoolean(), is(false));
+        assertThat(it.run(it.read("equal? [1 2] list 1 2")).toBooleanWord().getBoolean(), is(true));
+    }
+
+    @Test
+    public void testMemberNested() {
+        assertThat(it.run(it.read("member? [1 [2]] [[3] [1 [2]] x]")).toBooleanWord().getBoolean(), is(true));
+        assertThat(it.run(it.read("member? [1 [3]] [[3] [1 [2]] x]")).toBooleanWord().getBoolean(), is(false));
+        // The first match counts, later elements do not undo it
+        assertThat(it.run(it.read("member? \"a [a b c]")).toBooleanWord().getBoolean(), is(true));
+        assertThat(it.run(it.read("member? 2 [1 2 3]")).toBooleanWord().getBoolean(), is(true));
+    }
+
+    @Test
+    public void testChangedListIsHashedAgain() {
+        List inner = new List();
+        inner.addChild(Node.integer(1));
+        List outer = new List();
+        outer.addChild(inner);
+
+        List other = new List();
+        other.addChild(new List());
+        other.getChildren().get(0).addChild(Node.integer(1));
+        assertThat(outer.equals(other), is(true));
+        assertThat(outer.hashCode(), is(other.hashCode()));
+
+        inner.addChild(Node.integer(2));
+        assertThat(outer.equals(other), is(false));
+
+        other.getChildren().get(0).addChild(Node.integer(2));
+        assertThat(outer.equals(other), is(true));
+        assertThat(outer.hashCode(), is(other.hashCode()));
+    }
+
+    @Test
+    public void testDeeplyNestedChangeIsHashedAgain() {
+        List innermost = new List(Arrays.asList(Node.integer(1)));
+        List outer = new List(Arrays.asList(new List(Arrays.asList(innermost)), Node.symbol("a")));
+        List same = new List(Arrays.asList(new List(Arrays.asList(new List(Arrays.asList(Node.integer(1))))), Node.symbol("a")));
+        assertThat(outer.equals(same), is(true));
+
+        innermost.getChildren().set(0, Node.integer(2));
+        assertThat(outer.equals(same), is(false));
+        assertThat(outer.toString(), is("[[[2]] a]"));
+    }
+
+    @Test
+    public void testRemoveFromList() {
+        List list = new List(Arrays.asList(Node.symbol("a"), Node.symbol("b")));
+        List front = list.fput(Node.symbol("x"));
+        front.getChildren().remove(1);
+        assertThat(front.toString(), is("[x b]"));
+        assertThat(list.toString(), is("[a b]"));
+
+        List rest = list.butfirst();
+        list.getChildren().remove(1);
+        assertThat(list.toString(), is("[a]"));
+        assertThat(rest.toString(), is("[b]"));
+    }
 }
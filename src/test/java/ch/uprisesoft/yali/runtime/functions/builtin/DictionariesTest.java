@@ -0,0 +1,154 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.functions.builtin;
+
+import ch.uprisesoft.yali.ast.node.Dictionary;
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.helper.ObjectMother;
+import ch.uprisesoft.yali.runtime.interpreter.UnthreadedInterpreter;
+import ch.uprisesoft.yali.runtime.io.InputGenerator;
+import ch.uprisesoft.yali.runtime.io.OutputObserver;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class DictionariesTest {
+
+    private UnthreadedInterpreter it;
+    private OutputObserver oo;
+    private InputGenerator ig;
+    private java.util.List<String> outputs;
+
+    @BeforeEach
+    public void setUp() {
+        oo = new OutputObserver() {
+
+            @Override
+            public void inform(String output) {
+                outputs.add(output);
+            }
+        };
+
+        ig = new InputGenerator() {
+
+            @Override
+            public String request() {
+                return "requestedinput";
+            }
+
+            @Override
+            public String requestLine() {
+                return "requestedinputline";
+            }
+        };
+
+        it = new ObjectMother().getInterpreter(oo, ig);
+
+        outputs = new ArrayList<>();
+    }
+
+    @Test
+    public void testDict() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("make \"d dict").append("\n");
+        sb.append("dput :d \"route [a b]").append("\n");
+        sb.append("dput :d 1 \"one").append("\n");
+        sb.append("dput :d \"route [c]").append("\n");
+        it.run(it.read(sb.toString()));
+
+        assertThat(it.run(it.read("dget :d \"route")).toString(), is("[c]"));
+        assertThat(it.run(it.read("dget :d 1.0")).toString(), is("one"));
+        assertThat(it.run(it.read("dkey? :d \"1")).toBooleanWord().getBoolean(), is(true));
+        assertThat(it.run(it.read("dget :d \"missing")).toString(), is("[]"));
+        assertThat(it.run(it.read("count dkeys :d")).toIntegerWord().getInteger(), is(2));
+
+        it.run(it.read("dremove :d \"route"));
+        assertThat(it.run(it.read("dkey? :d \"route")).toBooleanWord().getBoolean(), is(false));
+        assertThat(it.run(it.read("dict? :d")).toBooleanWord().getBoolean(), is(true));
+    }
+
+    @Test
+    public void testManyKeys() {
+        Dictionary d = new Dictionary();
+        for (int i = 0; i < 1000; i++) {
+            d.put(Node.integer(i), Node.integer(i * i));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            d.remove(Node.symbol(Integer.toString(i)));
+        }
+
+        assertThat(d.size(), is(500));
+        for (int i = 0; i < 1000; i++) {
+            Node value = d.get(Node.integer(i));
+            if (i % 2 == 0) {
+                assertThat(value, is(nullValue()));
+            } else {
+                assertThat(value.toIntegerWord().getInteger(), is(i * i));
+            }
+        }
+    }
+
+    @Test
+    public void testPropertyLists() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("pprop \"turtle \"color \"red").append("\n");
+        sb.append("pprop \"turtle \"size 3").append("\n");
+        sb.append("remprop \"turtle \"size").append("\n");
+        it.run(it.read(sb.toString()));
+
+        assertThat(it.run(it.read("gprop \"turtle \"color")).toString(), is("red"));
+        assertThat(it.run(it.read("gprop \"turtle \"size")).toString(), is("[]"));
+        assertThat(it.run(it.read("plist \"turtle")).toString(), is("[color red]"));
+        assertThat(it.run(it.read("plist \"nobody")).type(), is(NodeType.LIST));
+    }
+
+    @Test
+    public void testKeysAreEqualWords() {
+        Dictionary d = new Dictionary();
+        d.put(Node.flt(1.0), Node.symbol("one"));
+        d.put(Node.bool(true), Node.symbol("yes"));
+
+        assertThat(d.get(Node.symbol("1.0")).toString(), is("one"));
+        assertThat(d.get(Node.integer(1)).toString(), is("one"));
+        assertThat(d.get(Node.quote("true")), is(nullValue()));
+        assertThat(d.get(Node.bool(true)).toString(), is("yes"));
+        assertThat(d.size(), is(2));
+    }
+
+    @Test
+    public void testPropertyListsInPmap() {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            values.append(i).append(" ");
+        }
+        String input = "to mark :x\n"
+                + "pprop \"marks :x :x\n"
+                + "output :x\n"
+                + "end\n"
+                + "pmap [mark ?] [" + values + "]\n";
+        it.run(it.read(input));
+
+        assertThat(it.run(it.read("plist \"marks")).getChildren().size(), is(2000));
+        assertThat(it.run(it.read("gprop \"marks 999")).toString(), is("999"));
+    }
+}
@@ -27,6 +27,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
  *
@@ -259,4 +260,14 @@ public class LogicTest {
         oo.inform("End testLessorequalSameVal()");
     }
     
+    @Test
+    public void testCanonicalBooleans() {
+        Node res = it.run(it.read("2 < 3"));
+        
+        assertThat(res, is(sameInstance(Node.bool(true))));
+        assertThat(it.run(it.read("2 = 3")), is(sameInstance(Node.bool(false))));
+        assertThrows(UnsupportedOperationException.class, () -> res.addChild(Node.nil()));
+        assertThrows(UnsupportedOperationException.class, () -> res.setPosInSource(1, 1));
+    }
+    
 }
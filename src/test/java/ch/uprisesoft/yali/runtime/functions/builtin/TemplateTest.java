@@ -29,7 +29,6 @@ import org.junit.jupiter.api.Test;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import org.junit.jupiter.api.BeforeEach;
-import org.junit.jupiter.api.Disabled;
 
 /**
  *
@@ -130,7 +129,6 @@ public class TemplateTest {
     }
     
     @Test
-    @Disabled
     public void testFind() {
         Node result = it.run(it.read("find [equal? ? 2] [1 2 3 4]"));
 
@@ -138,10 +136,84 @@ public class TemplateTest {
     }
     
     @Test
-    @Disabled
     public void testFindWord() {
         Node result = it.run(it.read("find [equal? ? \"b] \"abcd"));
 
         assertThat(result.toSymbolWord().getSymbol(), is("b"));
     }
+    
+    @Test
+    public void testFindNothing() {
+        Node result = it.run(it.read("find [equal? ? 5] [1 2 3 4]"));
+
+        assertThat(result.type(), is(NodeType.NONE));
+    }
+    
+    @Test
+    public void testNestedMap() {
+        Node result = it.run(it.read("map [map [? * 10] ?] [[1 2] [3]]"));
+
+        assertThat(result.getChildren().size(), is(2));
+        assertThat(result.getChildren().get(0).getChildren().size(), is(2));
+        assertThat(result.getChildren().get(0).getChildren().get(1).toIntegerWord().getInteger(), is(20));
+        assertThat(result.getChildren().get(1).getChildren().size(), is(1));
+        assertThat(result.getChildren().get(1).getChildren().get(0).toIntegerWord().getInteger(), is(30));
+    }
+    
+    @Test
+    public void testMapInRecursiveProcedure() {
+        String input = "to double :x\n"
+                + "ifelse list? :x [output map [double ?] :x] [output :x * 2]\n"
+                + "end\n"
+                + "double [1 [2 3] [[4]]]\n";
+
+        Node result = it.run(it.read(input));
+
+        assertThat(result.toString(), is("[2 [4 6] [[8]]]"));
+    }
+    
+    @Test
+    public void testReduce() {
+        Node result = it.run(it.read("reduce [?1 - ?2] [10 1 2 3]"));
+
+        assertThat(result.toIntegerWord().getInteger(), is(4));
+    }
+    
+    @Test
+    public void testPmap() {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            values.append(i).append(" ");
+        }
+        String input = "to score :x\n"
+                + "output :x * 2\n"
+                + "end\n"
+                + "pmap [score ?] [" + values + "]\n";
+
+        Node result = it.run(it.read(input));
+
+        assertThat(result.getChildren().size(), is(1000));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(result.getChildren().get(i).toIntegerWord().getInteger(), is(i * 2));
+        }
+    }
+    
+    @Test
+    public void testPfilter() {
+        Node result = it.run(it.read("pfilter [equal? (mod ? 2) 1] [1 2 3 4 5 6 7]"));
+
+        assertThat(result.toString(), is("[1 3 5 7]"));
+    }
+    
+    @Test
+    public void testPreduce() {
+        StringBuilder values = new StringBuilder();
+        for (int i = 1; i <= 1000; i++) {
+            values.append(i).append(" ");
+        }
+
+        Node result = it.run(it.read("preduce [?1 + ?2] [" + values + "]"));
+
+        assertThat(result.toIntegerWord().getInteger(), is(500500));
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.helper.ObjectMother;
+import ch.uprisesoft.yali.runtime.io.InputGenerator;
+import ch.uprisesoft.yali.runtime.io.OutputObserver;
+import java.util.ArrayList;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class BytecodeInterpreterTest {
+
+    private java.util.List<String> outputs;
+
+    private BytecodeInterpreter it;
+
+    @BeforeEach
+    public void setUp() {
+
+        outputs = new ArrayList<>();
+
+        OutputObserver oo = new OutputObserver() {
+
+            @Override
+            public void inform(String output) {
+                outputs.add(output);
+            }
+        };
+
+        InputGenerator ig = new InputGenerator() {
+
+            @Override
+            public String request() {
+                return "requestedinput";
+            }
+
+            @Override
+            public String requestLine() {
+                return "requestedinputline";
+            }
+        };
+
+        it = new ObjectMother().getBytecodeInterpreter(oo, ig);
+    }
+
+    @Test
+    public void testRecursion() {
+        String input = "to recurse :i\n"
+                + "print :i\n"
+                + "ifelse (:i > 0) [recurse :i - 1] [print \"finished]\n"
+                + "end\n"
+                + "\n"
+                + "recurse 100\n";
+
+        it.run(it.read(input));
+
+        assertThat(outputs.size(), is(102));
+        for (int i = 100; i >= 0; i--) {
+            assertThat(outputs.get(100 - i), is(i + "\n"));
+        }
+        assertThat(outputs.get(101), is("finished\n"));
+    }
+
+    @Test
+    public void testRecursionWithResult() {
+        String input = "to fib :n\n"
+                + "ifelse :n < 2 [output :n] [output (fib :n - 1) + (fib :n - 2)]\n"
+                + "end\n"
+                + "\n"
+                + "fib 15\n";
+
+        Node res = it.run(it.read(input));
+
+        assertThat(res.type(), is(NodeType.INTEGER));
+        assertThat(res.toIntegerWord().getInteger(), is(610));
+    }
+
+    @Test
+    public void testNestedRepeat() {
+        String input = "make \"x 0\n"
+                + "repeat 3 [repeat 4 [make \"x :x + 1]]\n"
+                + ":x\n";
+
+        Node res = it.run(it.read(input));
+
+        assertThat(res.toIntegerWord().getInteger(), is(12));
+    }
+
+    @Test
+    public void testBlocksWithoutCalls() {
+        assertThat(it.run(it.read("repeat 0 [print 1]")).type(), is(NodeType.NIL));
+        assertThat(it.run(it.read("if 1 > 2 [print 1]")).type(), is(NodeType.NIL));
+        assertThat(it.run(it.read("if 1 < 2 []")).type(), is(NodeType.NIL));
+        assertThat(it.run(it.read("run []")).type(), is(NodeType.NIL));
+        assertThat(outputs.size(), is(0));
+    }
+
+    @Test
+    public void testBlockFromVariable() {
+        String input = "make \"block [print \"hello]\n"
+                + "repeat 2 :block\n"
+                + "run :block\n";
+
+        it.run(it.read(input));
+
+        assertThat(outputs.size(), is(3));
+        assertThat(outputs.get(2), is("hello\n"));
+    }
+
+    @Test
+    public void testNativeSchedulingCalls() {
+        Node res = it.run(it.read("map [? + 1] [1 2 3]"));
+
+        assertThat(res.type(), is(NodeType.LIST));
+        assertThat(res.getChildren().size(), is(3));
+        assertThat(res.getChildren().get(2).toIntegerWord().getInteger(), is(4));
+    }
+
+    @Test
+    public void testRedefinitionIsPickedUp() {
+        String input = "to value\n"
+                + "output 1\n"
+                + "end\n"
+                + "\n"
+                + "to twice\n"
+                + "output 2 * (value)\n"
+                + "end\n";
+        it.run(it.read(input));
+
+        assertThat(it.run(it.read("twice")).toIntegerWord().getInteger(), is(2));
+
+        it.run(it.read("to value\noutput 21\nend\n"));
+
+        assertThat(it.run(it.read("twice")).toIntegerWord().getInteger(), is(42));
+    }
+
+    @Test
+    public void testPauseInBlock() {
+        String input = "to pausetest\n"
+                + "repeat 2 [print \"before pause print \"after]\n"
+                + "end\n"
+                + "\n"
+                + "pausetest\n"
+                + "print \"done\n";
+
+        it.run(it.read(input));
+        assertThat(it.paused(), is(true));
+        assertThat(outputs.size(), is(1));
+
+        it.resume();
+        assertThat(outputs.size(), is(3));
+
+        it.resume();
+        assertThat(it.paused(), is(false));
+        assertThat(it.finished(), is(true));
+        assertThat(outputs.size(), is(5));
+        assertThat(outputs.get(4), is("done\n"));
+    }
+
+    @Test
+    public void testTick() {
+        it.load(it.read("print 1\nprint 2\n"));
+
+        while (it.tick()) {
+            assertThat(outputs.size() <= 2, is(true));
+        }
+
+        assertThat(it.finished(), is(true));
+        assertThat(outputs.size(), is(2));
+    }
+
+    @Test
+    public void testWrongConditionType() {
+        NodeTypeException nte = assertThrows(NodeTypeException.class, () -> it.run(it.read("to bad\nif 1 [print 1]\nend\nbad\n")));
+
+        assertThat(nte.getReceived(), is(NodeType.INTEGER));
+        assertThat(nte.getExpected().get(0), is(NodeType.BOOLEAN));
+
+        assertThat(it.env().size(), is(2));
+        it.reset();
+        assertThat(it.env().size(), is(1));
+    }
+
+    @Test
+    public void testUnparsableBlockIsNotInlined() {
+        it.run(it.read("to maybe :x\nif :x [print 1 +]\nprint \"after\nend\nmaybe false\n"));
+
+        assertThat(outputs.size(), is(1));
+        assertThat(outputs.get(0), is("after\n"));
+    }
+}
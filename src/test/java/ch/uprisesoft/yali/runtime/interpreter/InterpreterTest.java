@@ -18,6 +18,7 @@ package ch.uprisesoft.yali.runtime.interpreter;
 import ch.uprisesoft.yali.ast.node.Node;
 import ch.uprisesoft.yali.ast.node.NodeType;
 import ch.uprisesoft.yali.exception.NodeTypeException;
+import ch.uprisesoft.yali.exception.RecursionException;
 import ch.uprisesoft.yali.helper.ObjectMother;
 import ch.uprisesoft.yali.runtime.io.InputGenerator;
 import ch.uprisesoft.yali.runtime.io.OutputObserver;
@@ -176,6 +177,34 @@ public class InterpreterTest {
 
     }
 
+    @Test
+    public void testRecursionWithResult() {
+        String input = "to fact :n\n"
+                + "ifelse :n = 0 [output 1] [output :n * (fact :n - 1)]\n"
+                + "end\n"
+                + "\n"
+                + "fact 10\n";
+
+        Node res = it.run(it.read(input));
+
+        assertThat(res.type(), is(NodeType.INTEGER));
+        assertThat(res.toIntegerWord().getInteger(), is(3628800));
+    }
+
+    @Test
+    public void testParsedCodeIsSharedBetweenInterpreters() {
+        String input = "to fib :n\n"
+                + "ifelse :n < 2 [output :n] [output (fib :n - 1) + (fib :n - 2)]\n"
+                + "end\n";
+        it.run(it.read(input));
+
+        UnthreadedInterpreter other = new ObjectMother().fork(it, oo, ig);
+        Node program = it.read("fib 12\n");
+
+        assertThat(it.run(program).toIntegerWord().getInteger(), is(144));
+        assertThat(other.run(program).toIntegerWord().getInteger(), is(144));
+    }
+
     @Test
     public void testNestedRunList() {
         String input =
@@ -236,4 +265,145 @@ public class InterpreterTest {
 
         assertThat(it.finished(), is(true));
     }
+
+    @Test
+    public void testCompiledMode() {
+        it.compiled(true);
+
+        String input = "to fib :n\n"
+                + "ifelse :n < 2 [output :n] [output (fib :n - 1) + (fib :n - 2)]\n"
+                + "end\n"
+                + "\n"
+                + "print map [? * 2] [1 2 3]\n"
+                + "fib 15\n";
+
+        Node res = it.run(it.read(input));
+
+        assertThat(outputs.get(0), is("2 4 6\n"));
+        assertThat(res.toIntegerWord().getInteger(), is(610));
+        assertThat(it.finished(), is(true));
+    }
+
+    @Test
+    public void testCompiledModeDeepRecursion() {
+        it.compiled(true);
+
+        String input = "to recurse :i\n"
+                + "if (:i > 0) [recurse :i - 1]\n"
+                + "print :i\n"
+                + "end\n"
+                + "\n"
+                + "recurse 2000\n";
+
+        it.run(it.read(input));
+
+        assertThat(outputs.size(), is(2001));
+        assertThat(outputs.get(2000), is("2000\n"));
+        assertThat(it.env().size(), is(1));
+    }
+
+    @Test
+    public void testCompiledModeFallsBackForPause() {
+        it.compiled(true);
+
+        String input = "to pausetest\n"
+                + "print \"two\n"
+                + "pause\n"
+                + "print \"three\n"
+                + "end\n"
+                + "\n"
+                + "print \"one\n"
+                + "pausetest\n";
+
+        it.run(it.read(input));
+        assertThat(it.paused(), is(true));
+        assertThat(outputs.size(), is(2));
+
+        it.resume();
+        assertThat(outputs.size(), is(3));
+        assertThat(outputs.get(2), is("three\n"));
+    }
+
+    @Test
+    public void testRedefinitionInvalidatesCallSite() {
+        String input = "to value\n"
+                + "output 1\n"
+                + "end\n"
+                + "\n"
+                + "to twice\n"
+                + "output 2 * (value)\n"
+                + "end\n";
+        it.run(it.read(input));
+
+        Node twice = it.read("twice");
+        assertThat(it.run(twice).toIntegerWord().getInteger(), is(2));
+        assertThat(it.run(twice).toIntegerWord().getInteger(), is(2));
+
+        it.run(it.read("to value\noutput 21\nend\n"));
+
+        assertThat(it.run(twice).toIntegerWord().getInteger(), is(42));
+    }
+
+    @Test
+    public void testTailRecursion() {
+        String input = "to loop :n\n"
+                + "if :n > 0 [loop :n - 1]\n"
+                + "end\n"
+                + "\n"
+                + "to count :n :acc\n"
+                + "ifelse :n = 0 [output :acc] [output count :n - 1 :acc + 1]\n"
+                + "end\n"
+                + "\n"
+                + "loop 200000\n";
+        it.run(it.read(input));
+
+        Node res = it.run(it.read("count 200000 0"));
+
+        assertThat(res.toIntegerWord().getInteger(), is(200000));
+        assertThat(it.env().size(), is(1));
+    }
+
+    @Test
+    public void testTailCallKeepsDynamicScope() {
+        String input = "to inner\n"
+                + "output :x\n"
+                + "end\n"
+                + "\n"
+                + "to outer :x\n"
+                + "output inner\n"
+                + "end\n"
+                + "\n"
+                + "outer 42\n";
+
+        Node res = it.run(it.read(input));
+
+        assertThat(res.toIntegerWord().getInteger(), is(42));
+    }
+
+    @Test
+    public void testDeepRecursion() {
+        String input = "to deep :n\n"
+                + "if :n > 0 [deep :n - 1 print :n]\n"
+                + "end\n";
+        it.run(it.read(input));
+
+        assertThrows(RecursionException.class, () -> it.run(it.read("deep 1000000")));
+    }
+
+    @Test
+    public void testIntegerOverflowPromotes() {
+        Node res = it.run(it.read("2147483647 + 1"));
+        assertThat(res.toString(), is("2147483648"));
+
+        res = it.run(it.read("9223372036854775807 * 4"));
+        assertThat(res.toString(), is("36893488147419103228"));
+        assertThat(res.toIntegerWord().isBig(), is(true));
+
+        res = it.run(it.read("(9223372036854775807 * 4) / 4"));
+        assertThat(res.toIntegerWord().isBig(), is(false));
+        assertThat(res.toIntegerWord().getLong(), is(Long.MAX_VALUE));
+
+        res = it.run(it.read("(9223372036854775807 * 4) > 9223372036854775807"));
+        assertThat(res.toBooleanWord().getBoolean(), is(true));
+    }
 }
@@ -0,0 +1,120 @@
+/* 
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.runtime.interpreter;
+
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.helper.ObjectMother;
+import ch.uprisesoft.yali.runtime.io.InputGenerator;
+import ch.uprisesoft.yali.runtime.io.OutputObserver;
+import ch.uprisesoft.yali.scope.Environment;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class TracerTest {
+
+    private UnthreadedInterpreter it;
+
+    @BeforeEach
+    public void setUp() {
+        OutputObserver oo = new OutputObserver() {
+
+            @Override
+            public void inform(String output) {
+            }
+        };
+
+        InputGenerator ig = new InputGenerator() {
+
+            @Override
+            public String request() {
+                return "requestedinput";
+            }
+
+            @Override
+            public String requestLine() {
+                return "requestedinputline";
+            }
+        };
+
+        it = new ObjectMother().getInterpreter(oo, ig);
+    }
+
+    @Test
+    public void testNoTracer() {
+        assertThat(CompositeTracer.of(Collections.emptyList()), is(NoTracer.INSTANCE));
+    }
+
+    @Test
+    public void testSingleTracerIsCalledDirectly() {
+        Tracer all = new Tracer() {
+        };
+
+        assertThat(CompositeTracer.of(Collections.singletonList(all)), is(all));
+    }
+
+    @Test
+    public void testSubscribedEventsOnly() {
+        List<String> calls = new ArrayList<>();
+        List<String> things = new ArrayList<>();
+
+        it.addTracer(new Tracer() {
+            @Override
+            public Set<Tracer.Event> events() {
+                return EnumSet.of(Tracer.Event.CALL);
+            }
+
+            @Override
+            public void call(String name, List<Node> args, Environment env) {
+                calls.add(name);
+            }
+
+            @Override
+            public void thing(String name, Node val, Environment env) {
+                things.add(name);
+            }
+        });
+
+        it.addTracer(new Tracer() {
+            @Override
+            public void thing(String name, Node val, Environment env) {
+                things.add(name);
+            }
+        });
+
+        String input = "to double :n\n"
+                + "output :n * 2\n"
+                + "end\n"
+                + "\n"
+                + "double 4\n";
+        it.run(it.read(input));
+
+        assertThat(calls.size(), is(not(0)));
+        assertThat(calls.get(0), is("double"));
+        assertThat(things.size(), is(1));
+        assertThat(things.get(0), is("n"));
+    }
+}
@@ -186,4 +186,92 @@ public class ScopingTest {
         assertThat(outputs.get(0), is("10\n"));
         assertThat(outputs.get(1), is("10\n"));
     }
+
+    @Test
+    public void testRecycledScopeIsEmpty() {
+        Environment env = it.env();
+
+        Scope first = env.push("first");
+        env.local("x");
+        env.make("x", Node.integer(1));
+        env.pop();
+
+        Scope second = env.push("second");
+
+        assertThat(second == first, is(true));
+        assertThat(second.name(), is("second"));
+        assertThat(env.thingable("x"), is(false));
+        env.pop();
+    }
+
+    @Test
+    public void testSymbolsIgnoreCase() {
+        assertThat(Symbol.of("Foo") == Symbol.of("foo"), is(true));
+        assertThat(Symbol.of("FOO").name(), is("foo"));
+
+        it.run(it.read("make \"Answer 42\nprint :ANSWER\nprint thing \"answer\n"));
+
+        assertThat(outputs.size(), is(2));
+        assertThat(outputs.get(0), is("42\n"));
+        assertThat(outputs.get(1), is("42\n"));
+    }
+
+    @Test
+    public void testSlotsAreDynamicallyScoped() {
+        String input = "to inner\n"
+                + "make \"x :x + 1\n"
+                + "make \"y :x * 10\n"
+                + "end\n"
+                + "\n"
+                + "to outer :x\n"
+                + "local \"y\n"
+                + "inner\n"
+                + "print :x\n"
+                + "print :y\n"
+                + "end\n"
+                + "\n"
+                + "outer 1\n"
+                + "outer 5\n";
+
+        it.run(it.read(input));
+
+        assertThat(outputs.size(), is(4));
+        assertThat(outputs.get(0), is("2\n"));
+        assertThat(outputs.get(1), is("20\n"));
+        assertThat(outputs.get(2), is("6\n"));
+        assertThat(outputs.get(3), is("60\n"));
+        assertThat(it.env().thingable("y"), is(false));
+    }
+
+    @Test
+    public void testVariablesDoNotChangeEpoch() {
+        String input = "to down :word :n\n"
+                + "ifelse :n = 0 [output :word] [output down :word :n - 1]\n"
+                + "end\n"
+                + "\n"
+                + "make \"word \"x\n";
+
+        it.run(it.read(input));
+        long epoch = it.env().epoch();
+
+        Node res = it.run(it.read("down \"a 50"));
+
+        assertThat(res.toString(), is("a"));
+        assertThat(it.env().epoch(), is(epoch));
+    }
+
+    @Test
+    public void testVariableDoesNotHideProcedure() {
+        String input = "to twice :print\n"
+                + "print :print\n"
+                + "print :print\n"
+                + "end\n"
+                + "\n"
+                + "twice \"hi\n";
+
+        it.run(it.read(input));
+
+        assertThat(outputs.size(), is(2));
+        assertThat(outputs.get(1), is("hi\n"));
+    }
 }
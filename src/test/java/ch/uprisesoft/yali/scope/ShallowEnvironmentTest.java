@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Uprise Software.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.uprisesoft.yali.scope;
+
+import ch.uprisesoft.yali.ast.node.Node;
+import ch.uprisesoft.yali.ast.node.NodeType;
+import ch.uprisesoft.yali.runtime.interpreter.UnthreadedInterpreter;
+import ch.uprisesoft.yali.runtime.io.InputGenerator;
+import ch.uprisesoft.yali.runtime.io.OutputObserver;
+import java.util.ArrayList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author uprisesoft@gmail.com
+ */
+public class ShallowEnvironmentTest {
+
+    private UnthreadedInterpreter it;
+    private java.util.List<String> outputs;
+
+    @BeforeEach
+    public void setUp() {
+        outputs = new ArrayList<>();
+        OutputObserver oo = new OutputObserver() {
+
+            @Override
+            public void inform(String output) {
+                outputs.add(output);
+            }
+        };
+
+        InputGenerator ig = new InputGenerator() {
+
+            @Override
+            public String request() {
+                return "requestedinput";
+            }
+
+            @Override
+            public String requestLine() {
+                return "requestedinputline";
+            }
+        };
+
+        it = new UnthreadedInterpreter(new ShallowEnvironment());
+        it.loadStdLib(oo, ig);
+    }
+
+    @Test
+    public void testShadowedValueIsRestored() {
+        String input = "make \"x 1\n"
+                + "to inner\n"
+                + "make \"x :x + 1\n"
+                + "print :x\n"
+                + "end\n"
+                + "\n"
+                + "to outer :x\n"
+                + "inner\n"
+                + "end\n"
+                + "\n"
+                + "outer 10\n"
+                + "print :x\n";
+
+        it.run(it.read(input));
+
+        assertThat(outputs.size(), is(2));
+        assertThat(outputs.get(0), is("11\n"));
+        assertThat(outputs.get(1), is("1\n"));
+        assertThat(it.env().size(), is(1));
+    }
+
+    @Test
+    public void testDeepRecursionMakesGlobal() {
+        String input = "make \"count 0\n"
+                + "to down :n\n"
+                + "if :n > 0 [make \"count :count + 1 down :n - 1]\n"
+                + "end\n"
+                + "\n"
+                + "down 2000\n"
+                + ":count\n";
+
+        Node res = it.run(it.read(input));
+
+        assertThat(res.type(), is(NodeType.INTEGER));
+        assertThat(res.toIntegerWord().getInteger(), is(2000));
+        assertThat(it.env().thingable("n"), is(false));
+    }
+
+    @Test
+    public void testUnmakeInScope() {
+        Environment env = it.env();
+        env.make("x", Node.integer(1));
+
+        env.push("outer");
+        env.local("x");
+        env.make("x", Node.integer(2));
+        env.push("inner");
+        env.local("x");
+        env.make("x", Node.integer(3));
+
+        assertThat(env.thing("x").toIntegerWord().getInteger(), is(3));
+
+        env.peek().unmake("x");
+        assertThat(env.thing("x").toIntegerWord().getInteger(), is(2));
+
+        env.pop();
+        env.pop();
+        assertThat(env.thing("x").toIntegerWord().getInteger(), is(1));
+    }
+}